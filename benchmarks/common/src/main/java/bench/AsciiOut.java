@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Minimal buffered writer for generated input files: ASCII text and
+ * non-negative ints straight into a byte buffer, so writing gigabytes
+ * of adjacency lines allocates nothing per number.
+ */
+final class AsciiOut implements Closeable {
+    private final OutputStream out;
+    private final byte[] buf = new byte[1 << 16];
+    private int count = 0;
+    private long written = 0;
+
+    AsciiOut(OutputStream out) {
+        this.out = out;
+    }
+
+    AsciiOut write(char c) throws IOException {
+        if (count == buf.length)
+            drain();
+        buf[count++] = (byte) c;
+        return this;
+    }
+
+    AsciiOut write(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++)
+            write(s.charAt(i));
+        return this;
+    }
+
+    AsciiOut write(long value) throws IOException {
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value: " + value);
+        if (buf.length - count < 20)
+            drain();
+        int end = count + digits(value);
+        for (int i = end - 1; i >= count; i--, value /= 10)
+            buf[i] = (byte) ('0' + value % 10);
+        count = end;
+        return this;
+    }
+
+    long bytesWritten() {
+        return written + count;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private void drain() throws IOException {
+        out.write(buf, 0, count);
+        written += count;
+        count = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+}
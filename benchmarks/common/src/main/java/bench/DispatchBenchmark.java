@@ -0,0 +1,63 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * processRequest over the workload's clients, as main runs it: default
+ * tree cache, output formatted into a discarded buffer. Pickup legs
+ * are searched for, or read from nearest-taxi labels ("voronoi").
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    static final long CACHE_BYTES = 64L << 20;
+
+    @Param({"Graph2", "grid-1000", "grid-100000", "geometric-100000", "scale-free-100000", "road-100000"})
+    public String graph;
+
+    @Param({"search", "voronoi"})
+    public String pickups;
+
+    private Simulator simulator;
+    private int clients;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, CACHE_BYTES);
+        }
+        simulator.requests(w);
+        if (pickups.equals("voronoi"))
+            simulator.voronoi();
+        clients = w.clients.size();
+    }
+
+    @Benchmark
+    public boolean processRequest() {
+        if (next == clients)
+            next = 0;
+        return simulator.processRequest(next++);
+    }
+}
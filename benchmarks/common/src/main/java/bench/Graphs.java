@@ -0,0 +1,202 @@
+package bench;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthetic road networks written in the graph section of the input
+ * format: a node count line, then one "source {dest cost}*" line per
+ * vertex. Vertices are named 0..n-1 and every road is two-way.
+ *
+ * <ul>
+ * <li>grid: a city block lattice, costs 1..10;</li>
+ * <li>geometric: random points in a square joined to all points within
+ * a radius that gives about six neighbours, costs proportional to
+ * length;</li>
+ * <li>scale-free: preferential attachment (two roads per new vertex),
+ * a few hubs with very many roads, costs 1..100.</li>
+ * <li>road: a {@link RoadNetwork} city with WorkloadGenerator's
+ * defaults, generated in constant memory.</li>
+ * <li>scattered-road: the same city with its lines in a scrambled
+ * order, so vertex ids say nothing about where vertices are.</li>
+ * </ul>
+ */
+public final class Graphs {
+    public static final String[] KINDS = {"grid", "geometric", "scale-free", "road", "scattered-road"};
+
+    private Graphs() {
+    }
+
+    /**
+     * Write a graph of the given kind with n vertices to file.
+     */
+    public static void write(String kind, int n, long seed, Path file) throws IOException {
+        if (kind.equals("road") || kind.equals("scattered-road")) {
+            try (AsciiOut out = new AsciiOut(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                new RoadNetwork(n, 3, RoadNetwork.Costs.uniform(1, 100), 0.1, seed)
+                        .write(out, kind.equals("scattered-road"));
+            }
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            write(kind, n, new Random(seed), out);
+        }
+    }
+
+    public static void write(String kind, int n, Random random, Writer out) throws IOException {
+        if (n < 1)
+            throw new IllegalArgumentException("A graph needs at least one vertex: " + n);
+        switch (kind) {
+            case "grid":
+                grid(n, random, out);
+                break;
+            case "geometric":
+                geometric(n, random, out);
+                break;
+            case "scale-free":
+                scaleFree(n, random, out);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown graph kind: " + kind);
+        }
+    }
+
+    private static void grid(int n, Random random, Writer out) throws IOException {
+        int width = (int) Math.ceil(Math.sqrt(n));
+        // Cost of the road from v to v + 1 and from v to v + width
+        int[] across = new int[n];
+        int[] down = new int[n];
+        for (int v = 0; v < n; v++) {
+            across[v] = 1 + random.nextInt(10);
+            down[v] = 1 + random.nextInt(10);
+        }
+        out.write(n + "\n");
+        for (int v = 0; v < n; v++) {
+            out.write(Integer.toString(v));
+            int column = v % width;
+            if (column + 1 < width && v + 1 < n)
+                edge(out, v + 1, across[v]);
+            if (column > 0)
+                edge(out, v - 1, across[v - 1]);
+            if (v + width < n)
+                edge(out, v + width, down[v]);
+            if (v >= width)
+                edge(out, v - width, down[v - width]);
+            out.write('\n');
+        }
+    }
+
+    private static void geometric(int n, Random random, Writer out) throws IOException {
+        double radius = Math.sqrt(6.0 / (Math.PI * n));
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int v = 0; v < n; v++) {
+            x[v] = random.nextDouble();
+            y[v] = random.nextDouble();
+        }
+        // Bucket the points into cells one radius wide
+        int cells = Math.max(1, (int) (1 / radius));
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            cellOf[v] = cell(x[v], cells) * cells + cell(y[v], cells);
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++)
+            cellStart[c + 1] += cellStart[c];
+        int[] members = new int[n];
+        int[] next = Arrays.copyOf(cellStart, cells * cells);
+        for (int v = 0; v < n; v++)
+            members[next[cellOf[v]]++] = v;
+
+        out.write(n + "\n");
+        for (int v = 0; v < n; v++) {
+            out.write(Integer.toString(v));
+            int cx = cellOf[v] / cells;
+            int cy = cellOf[v] % cells;
+            for (int i = Math.max(0, cx - 1); i <= Math.min(cells - 1, cx + 1); i++) {
+                for (int j = Math.max(0, cy - 1); j <= Math.min(cells - 1, cy + 1); j++) {
+                    int c = i * cells + j;
+                    for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                        int w = members[k];
+                        double d = Math.hypot(x[v] - x[w], y[v] - y[w]);
+                        if (w != v && d <= radius)
+                            edge(out, w, 1 + (int) (100 * d / radius));
+                    }
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    private static int cell(double coordinate, int cells) {
+        return Math.min(cells - 1, (int) (coordinate * cells));
+    }
+
+    private static void scaleFree(int n, Random random, Writer out) throws IOException {
+        final int m = 2;                    // Roads added with each vertex
+        int roads = 0;
+        int[] from = new int[m * n];
+        int[] to = new int[m * n];
+        int[] cost = new int[m * n];
+        // Every road end once, so a uniform pick is degree-proportional
+        int[] ends = new int[2 * m * n];
+        int endCount = 0;
+        for (int v = 1; v < n; v++) {
+            int first = -1;
+            for (int k = 0; k < Math.min(m, v); k++) {
+                int w = endCount == 0 ? 0 : ends[random.nextInt(endCount)];
+                if (w == first)
+                    w = random.nextInt(v);
+                if (w == first)
+                    continue;
+                first = w;
+                from[roads] = v;
+                to[roads] = w;
+                cost[roads] = 1 + random.nextInt(100);
+                roads++;
+                ends[endCount++] = v;
+                ends[endCount++] = w;
+            }
+        }
+
+        // Group both directions of every road by vertex
+        int[] start = new int[n + 1];
+        for (int r = 0; r < roads; r++) {
+            start[from[r] + 1]++;
+            start[to[r] + 1]++;
+        }
+        for (int v = 0; v < n; v++)
+            start[v + 1] += start[v];
+        int[] fill = Arrays.copyOf(start, n);
+        int[] other = new int[2 * roads];
+        int[] weight = new int[2 * roads];
+        for (int r = 0; r < roads; r++) {
+            other[fill[from[r]]] = to[r];
+            weight[fill[from[r]]++] = cost[r];
+            other[fill[to[r]]] = from[r];
+            weight[fill[to[r]]++] = cost[r];
+        }
+
+        out.write(n + "\n");
+        for (int v = 0; v < n; v++) {
+            out.write(Integer.toString(v));
+            for (int e = start[v]; e < start[v + 1]; e++)
+                edge(out, other[e], weight[e]);
+            out.write('\n');
+        }
+    }
+
+    private static void edge(Writer out, int dest, int cost) throws IOException {
+        out.write(' ');
+        out.write(Integer.toString(dest));
+        out.write(' ');
+        out.write(Integer.toString(cost));
+    }
+}
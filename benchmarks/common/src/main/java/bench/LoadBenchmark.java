@@ -0,0 +1,67 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading the graph: parsing the text adjacency list into a CSR graph,
+ * and opening the same graph from a binary snapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"Graph2", "grid-1000", "grid-100000", "geometric-100000", "scale-free-100000", "road-100000"})
+    public String graph;
+
+    private Simulator simulator;
+    private Path text;
+    private Path snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = Workload.of(graph).graph;
+        simulator = Simulator.load();
+        loadText();
+        snapshot = Files.createTempFile(graph, ".csr");
+        simulator.writeSnapshot(snapshot);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+
+    @Benchmark
+    public int loadText() throws IOException {
+        try (InputStream in = Files.newInputStream(text)) {
+            simulator.loadText(in, 0);
+        }
+        return simulator.vertexCount();
+    }
+
+    @Benchmark
+    public int loadSnapshot() throws IOException {
+        simulator.loadSnapshot(snapshot, 0);
+        return simulator.vertexCount();
+    }
+}
@@ -0,0 +1,82 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of leaving search metrics on: the searches of
+ * SearchBenchmark and the requests of DispatchBenchmark (without a
+ * tree cache, so every leg is searched) with metrics off and on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"grid-100000", "road-100000"})
+    public String graph;
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    private Simulator simulator;
+    private String[] sources;
+    private String[] dests;
+    private int clients;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, 0);
+        }
+        simulator.requests(w);
+        simulator.metrics(metrics.equals("on"));
+        clients = w.clients.size();
+        Random random = new Random(11);
+        sources = new String[QUERIES];
+        dests = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = Integer.toString(random.nextInt(w.vertices));
+            dests[i] = Integer.toString(random.nextInt(w.vertices));
+        }
+    }
+
+    @Benchmark
+    public void dijkstra() {
+        simulator.dijkstra(sources[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public double[] getDistance() {
+        int i = next++ & (QUERIES - 1);
+        return simulator.getDistance(sources[i], dests[i]);
+    }
+
+    @Benchmark
+    public boolean processRequest() {
+        int i = next++ % clients;
+        return simulator.processRequest(i);
+    }
+}
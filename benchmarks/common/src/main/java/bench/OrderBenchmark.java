@@ -0,0 +1,75 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The searches of SearchBenchmark on large graphs renumbered for cache
+ * locality as they load ("local") and left with ids in input order
+ * ("input"). Geometric and scattered-road graphs come with ids that
+ * say nothing about where vertices are; road ids already run row by
+ * row. Run with "-prof perfnorm" where perf is available to see the
+ * cache misses behind the times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class OrderBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"scattered-road-1000000", "geometric-1000000", "road-1000000"})
+    public String graph;
+
+    @Param({"local", "input"})
+    public String order;
+
+    private Simulator simulator;
+    private String[] sources;
+    private String[] dests;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, 0, order.equals("local"));
+        }
+        Random random = new Random(11);
+        sources = new String[QUERIES];
+        dests = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = Integer.toString(random.nextInt(w.vertices));
+            dests[i] = Integer.toString(random.nextInt(w.vertices));
+        }
+    }
+
+    @Benchmark
+    public void dijkstra() {
+        simulator.dijkstra(sources[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public double[] getDistance() {
+        int i = next++ & (QUERIES - 1);
+        return simulator.getDistance(sources[i], dests[i]);
+    }
+}
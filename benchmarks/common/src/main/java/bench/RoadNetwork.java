@@ -0,0 +1,204 @@
+package bench;
+
+import java.io.IOException;
+
+/**
+ * A road-like city graph generated one adjacency line at a time, in
+ * constant memory, so inputs of any size can be streamed to disk.
+ *
+ * <p>Vertices sit on a square lattice, numbered row by row. Every row is
+ * a street (all east-west roads exist) and column 0 is an avenue, which
+ * keeps the city connected; further north-south roads and then diagonal
+ * shortcuts are added at random until the mean degree is reached. All
+ * roads are two-way. Whether a road exists and what it costs depend
+ * only on a hash of its two ends and the seed, so both directions agree
+ * without remembering anything.
+ *
+ * <p>A fraction of the roads ({@code ties}) gets the cost distribution's
+ * lowest cost instead of a random one. Around blocks of such roads many
+ * routes have the same length, which is what exercises the simulators'
+ * "multiple solutions" output.
+ */
+public final class RoadNetwork {
+    /**
+     * Road costs: uniform between lo and hi, normal with the given mean
+     * and deviation (at least 1), or constant.
+     */
+    public static final class Costs {
+        final String kind;
+        final double a;
+        final double b;
+
+        private Costs(String kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        public static Costs uniform(int lo, int hi) {
+            if (lo < 1 || hi < lo)
+                throw new IllegalArgumentException("Need 1 <= lo <= hi: " + lo + ", " + hi);
+            return new Costs("uniform", lo, hi);
+        }
+
+        public static Costs normal(double mean, double deviation) {
+            return new Costs("normal", mean, deviation);
+        }
+
+        public static Costs constant(int cost) {
+            return uniform(cost, cost);
+        }
+
+        /**
+         * Parse "uniform:LO:HI", "normal:MEAN:SD" or "constant:C".
+         */
+        public static Costs parse(String spec) {
+            String[] parts = spec.split(":");
+            switch (parts[0]) {
+                case "uniform":
+                    return uniform(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                case "normal":
+                    return normal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                case "constant":
+                    return constant(Integer.parseInt(parts[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown cost distribution: " + spec);
+            }
+        }
+
+        /**
+         * Lowest cost the distribution gives, used for tied roads.
+         */
+        int lowest() {
+            return kind.equals("uniform") ? (int) a : Math.max(1, (int) Math.round(a - 2 * b));
+        }
+
+        int cost(long h1, long h2) {
+            if (kind.equals("uniform"))
+                return (int) a + (int) (unit(h1) * (b - a + 1));
+            double gauss = Math.sqrt(-2 * Math.log(1 - unit(h1))) * Math.cos(2 * Math.PI * unit(h2));
+            return Math.max(1, (int) Math.round(a + b * gauss));
+        }
+    }
+
+    private static final long ROAD = 1;     // Salts of the per-road hashes
+    private static final long COST = 2;
+    private static final long GAUSS = 3;
+    private static final long TIE = 4;
+
+    private final long n;
+    private final long width;
+    private final double avenues;   // Chance of a north-south road
+    private final double diagonals; // Chance of each diagonal road
+    private final Costs costs;
+    private final double ties;
+    private final long seed;
+
+    /**
+     * A city of n vertices with mean degree about degree (2 to 8).
+     */
+    public RoadNetwork(long n, double degree, Costs costs, double ties, long seed) {
+        if (n < 1)
+            throw new IllegalArgumentException("A graph needs at least one vertex: " + n);
+        if (degree < 2 || degree > 8)
+            throw new IllegalArgumentException("Mean degree must be between 2 and 8: " + degree);
+        this.n = n;
+        this.width = (long) Math.ceil(Math.sqrt(n));
+        this.avenues = Math.min(1, (degree - 2) / 2);
+        this.diagonals = Math.max(0, (degree - 4) / 4);
+        this.costs = costs;
+        this.ties = ties;
+        this.seed = seed;
+    }
+
+    public long vertexCount() {
+        return n;
+    }
+
+    /**
+     * Write the graph section of the input format: the vertex count,
+     * then one adjacency line per vertex.
+     */
+    void write(AsciiOut out) throws IOException {
+        write(out, false);
+    }
+
+    /**
+     * Write the graph section, the adjacency lines in a scrambled
+     * order if scattered is set. Simulators number vertices in the
+     * order they first appear, so ids then have nothing to do with
+     * where vertices are, as in data exported from elsewhere.
+     */
+    void write(AsciiOut out, boolean scattered) throws IOException {
+        long stride = scattered ? stride() : 1;
+        out.write(n).write('\n');
+        for (long i = 0; i < n; i++) {
+            long v = Math.floorMod(i * stride, n);
+            out.write(v);
+            long row = v / width;
+            long column = v % width;
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    long r = row + dr;
+                    long c = column + dc;
+                    if ((dr == 0 && dc == 0) || r < 0 || c < 0 || c >= width)
+                        continue;
+                    long w = r * width + c;
+                    if (w < n && exists(v, w, dr, dc))
+                        out.write(' ').write(w).write(' ').write(cost(v, w));
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    /**
+     * A step near n / golden ratio with no factor in common with n,
+     * so i * stride mod n visits every vertex once, far apart.
+     */
+    private long stride() {
+        long s = Math.max(1, (long) (n * 0.6180339887));
+        while (gcd(s, n) != 1)
+            s++;
+        return s;
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private boolean exists(long v, long w, int dr, int dc) {
+        if (dr == 0)                            // Street
+            return true;
+        if (dc == 0)                            // Avenue
+            return v % width == 0 || unit(hash(v, w, ROAD)) < avenues;
+        return unit(hash(v, w, ROAD)) < diagonals;
+    }
+
+    private int cost(long v, long w) {
+        if (unit(hash(v, w, TIE)) < ties)
+            return costs.lowest();
+        return costs.cost(hash(v, w, COST), hash(v, w, GAUSS));
+    }
+
+    /**
+     * Hash of the road between v and w, the same from either end.
+     */
+    private long hash(long v, long w, long salt) {
+        long lo = Math.min(v, w);
+        long hi = Math.max(v, w);
+        return mix(mix(mix(seed ^ salt) + lo) + hi);
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+}
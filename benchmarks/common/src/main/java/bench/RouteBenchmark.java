@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Point-to-point getDistance between random vertices, answered by plain
+ * Dijkstra, by A* with landmarks or by a contraction hierarchy, with the
+ * tree cache off. Building the index is part of the setup and printed,
+ * not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"grid-100000", "geometric-100000", "road-100000"})
+    public String graph;
+
+    @Param({"dijkstra", "alt", "ch"})
+    public String router;
+
+    private Simulator simulator;
+    private String[] sources;
+    private String[] dests;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, 0);
+        }
+        System.out.println(simulator.router(router));
+        Random random = new Random(11);
+        sources = new String[QUERIES];
+        dests = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = Integer.toString(random.nextInt(w.vertices));
+            dests[i] = Integer.toString(random.nextInt(w.vertices));
+        }
+    }
+
+    @Benchmark
+    public double[] getDistance() {
+        int i = next++ & (QUERIES - 1);
+        return simulator.getDistance(sources[i], dests[i]);
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single searches between random vertices, with the tree cache off so
+ * every call really searches: a complete tree (dijkstra) and a search
+ * stopped at its destination (getDistance).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERIES = 256;
+
+    @Param({"Graph2", "grid-1000", "grid-100000", "geometric-100000", "scale-free-100000", "road-100000"})
+    public String graph;
+
+    private Simulator simulator;
+    private String[] sources;
+    private String[] dests;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, 0);
+        }
+        Random random = new Random(11);
+        sources = new String[QUERIES];
+        dests = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = Integer.toString(random.nextInt(w.vertices));
+            dests[i] = Integer.toString(random.nextInt(w.vertices));
+        }
+    }
+
+    @Benchmark
+    public void dijkstra() {
+        simulator.dijkstra(sources[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public double[] getDistance() {
+        int i = next++ & (QUERIES - 1);
+        return simulator.getDistance(sources[i], dests[i]);
+    }
+}
@@ -0,0 +1,106 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * What the benchmarks need from a simulator. SimulatorOne and
+ * SimulatorTwo live in the default package, which a benchmark cannot
+ * import, so each benchmark jar registers an adapter for its simulator
+ * as a service and the benchmarks find it with {@link #load()}.
+ */
+public interface Simulator {
+
+    /**
+     * The adapter registered in this jar.
+     */
+    static Simulator load() {
+        return java.util.ServiceLoader.load(Simulator.class).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No bench.Simulator registered; "
+                        + "run a jar built by benchmarks/part_one or benchmarks/part_two"));
+    }
+
+    /**
+     * Read the graph section (node count line, then adjacency lines)
+     * of the input format into a new simulator with the given tree
+     * cache budget.
+     */
+    default void loadText(InputStream in, long cacheBytes) throws IOException {
+        loadText(in, cacheBytes, true);
+    }
+
+    /**
+     * As loadText, with large graphs renumbered for cache locality as
+     * they load (the simulators' default) or left in input order.
+     */
+    void loadText(InputStream in, long cacheBytes, boolean reorder) throws IOException;
+
+    /**
+     * Open a graph snapshot into a new simulator.
+     */
+    void loadSnapshot(Path file, long cacheBytes) throws IOException;
+
+    /**
+     * Save the current graph as a snapshot.
+     */
+    void writeSnapshot(Path file) throws IOException;
+
+    int vertexCount();
+
+    /**
+     * Use the shops, taxis and clients of w for processRequest.
+     */
+    void requests(Workload w);
+
+    /**
+     * Label every vertex with its nearest taxi of the workload, so
+     * processRequest reads pickup legs instead of searching. Returns
+     * the labels' build report; part one has no taxis.
+     */
+    default String voronoi() {
+        return "no taxis";
+    }
+
+    /**
+     * Answer getDistance and requests with the given point-to-point
+     * index: "dijkstra" (none), "alt" (landmarks) or "ch" (contraction
+     * hierarchy). Returns the index's build report.
+     */
+    String router(String kind);
+
+    /**
+     * Order search frontiers with a radix heap when every edge cost is
+     * a whole number (the default), or with the binary heap always.
+     */
+    void radixHeap(boolean on);
+
+    /**
+     * Count the work and times of every search and request (the
+     * simulators' SearchMetrics), or not (the default).
+     */
+    void metrics(boolean on);
+
+    void dijkstra(String source);
+
+    /**
+     * The complete forward tree of source: one sequential Dijkstra if
+     * pool is null, else delta-stepping on pool.
+     */
+    Object fullTree(String source, ForkJoinPool pool);
+
+    double[] getDistance(String source, String dest);
+
+    /**
+     * Set the cost of edge number e (in CSR order, modulo the edge
+     * count) through updateEdge. Unless repair is set, the tree cache
+     * is then emptied, as if every cached tree had to be searched again.
+     */
+    void updateEdge(int e, double cost, boolean repair);
+
+    /**
+     * Dispatch client number i of the workload, discarding the output.
+     */
+    boolean processRequest(int i);
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Complete trees from random sources of a large graph: one sequential
+ * Dijkstra (threads = 0) against delta-stepping on a fork-join pool of
+ * that many threads, which includes counting the paths. Pass
+ * -p threads=... with the machine's core counts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class TreeBenchmark {
+    private static final int QUERIES = 16;
+
+    @Param({"grid-1000000", "road-1000000"})
+    public String graph;
+
+    @Param({"0", "1", "4", "16", "64"})
+    public int threads;
+
+    private Simulator simulator;
+    private ForkJoinPool pool;
+    private String[] sources;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, 0);
+        }
+        pool = threads == 0 ? null : new ForkJoinPool(threads);
+        Random random = new Random(17);
+        sources = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+            sources[i] = Integer.toString(random.nextInt(w.vertices));
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public Object tree() {
+        return simulator.fullTree(sources[next++ & (QUERIES - 1)], pool);
+    }
+}
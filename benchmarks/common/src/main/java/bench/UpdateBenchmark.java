@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A stream of edge cost updates interleaved with client requests: one
+ * random road gets a new random cost, then the next few clients are
+ * dispatched, with the default tree cache. With repair the cached trees
+ * of shops and taxis are repaired in place; without, they are dropped
+ * and searched again by the requests that need them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+    @Param({"grid-100000", "road-100000"})
+    public String graph;
+
+    @Param({"true", "false"})
+    public boolean repair;
+
+    @Param({"1", "16"})
+    public int requestsPerUpdate;
+
+    private Simulator simulator;
+    private final Random random = new Random(13);
+    private int clients;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        Workload w = Workload.of(graph);
+        simulator = Simulator.load();
+        try (InputStream in = Files.newInputStream(w.graph)) {
+            simulator.loadText(in, DispatchBenchmark.CACHE_BYTES);
+        }
+        simulator.requests(w);
+        clients = w.clients.size();
+    }
+
+    @Benchmark
+    public int updateThenDispatch() {
+        simulator.updateEdge(random.nextInt(Integer.MAX_VALUE), 1 + random.nextInt(100), repair);
+        int helped = 0;
+        for (int i = 0; i < requestsPerUpdate; i++) {
+            if (next == clients)
+                next = 0;
+            if (simulator.processRequest(next++))
+                helped++;
+        }
+        return helped;
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A graph file plus the shops, taxis and client requests run on it.
+ * Named by a spec: "Graph2" for the shipped sample, or
+ * "&lt;kind&gt;-&lt;vertices&gt;" for a {@link Graphs} graph, e.g. "grid-100000".
+ * Generated graphs are written once to java.io.tmpdir/taxi-bench and
+ * reused by later runs and forks.
+ */
+public final class Workload {
+    static final int SHOPS = 8;
+    static final int TAXIS = 32;
+    static final int CLIENTS = 1024;
+
+    public final String spec;
+    public final Path graph;            // Graph section of the input format
+    public final int vertices;
+    public final List<String> shops;
+    public final List<String> taxis;
+    public final List<String> clients;
+    public final List<String> destinations;     // Shop asked for by each client
+
+    private Workload(String spec, Path graph, int vertices, List<String> shops, List<String> taxis,
+                     List<String> clients, List<String> destinations) {
+        this.spec = spec;
+        this.graph = graph;
+        this.vertices = vertices;
+        this.shops = shops;
+        this.taxis = taxis;
+        this.clients = clients;
+        this.destinations = destinations;
+    }
+
+    public static Workload of(String spec) throws IOException {
+        if (spec.equals("Graph2"))
+            return sample();
+        int dash = spec.lastIndexOf('-');
+        if (dash < 0)
+            throw new IllegalArgumentException("Expected Graph2 or <kind>-<vertices>: " + spec);
+        String kind = spec.substring(0, dash);
+        int n = Integer.parseInt(spec.substring(dash + 1));
+
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "taxi-bench");
+        Files.createDirectories(dir);
+        Path file = dir.resolve(spec + ".txt");
+        if (!Files.exists(file)) {
+            Path partial = Files.createTempFile(dir, spec, ".part");
+            Graphs.write(kind, n, 42, partial);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        Random random = new Random(7);
+        List<String> shops = vertices(random, n, SHOPS);
+        List<String> clients = vertices(random, n, CLIENTS);
+        List<String> destinations = new ArrayList<String>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++)
+            destinations.add(shops.get(random.nextInt(SHOPS)));
+        return new Workload(spec, file, n, shops, vertices(random, n, TAXIS), clients, destinations);
+    }
+
+    private static List<String> vertices(Random random, int n, int count) {
+        List<String> names = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++)
+            names.add(Integer.toString(random.nextInt(n)));
+        return names;
+    }
+
+    /**
+     * The sample input shipped as part_two/Graph2.txt.
+     */
+    private static Workload sample() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        try (InputStream in = Workload.class.getResourceAsStream("/Graph2.txt");
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            for (String line; (line = reader.readLine()) != null; )
+                lines.add(line.trim());
+        }
+        int n = Integer.parseInt(lines.get(0));
+        Path file = Files.createTempFile("Graph2", ".txt");
+        file.toFile().deleteOnExit();
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (String line : lines.subList(0, n + 1))
+                out.write(line + "\n");
+        }
+        int at = n + 1;
+        List<String> shops = words(lines.get(at + 1));
+        List<String> taxis = words(lines.get(at + 3));
+        int count = Integer.parseInt(lines.get(at + 4));
+        List<String> clients = new ArrayList<String>(count);
+        List<String> destinations = new ArrayList<String>(count);
+        for (String line : lines.subList(at + 5, at + 5 + count)) {
+            List<String> request = words(line);
+            clients.add(request.get(0));
+            destinations.add(request.get(1));
+        }
+        return new Workload("Graph2", file, n, shops, taxis, clients, destinations);
+    }
+
+    private static List<String> words(String line) {
+        return line.isEmpty() ? new ArrayList<String>() : Arrays.asList(line.split("\\s+"));
+    }
+}
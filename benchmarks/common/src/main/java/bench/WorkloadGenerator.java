@@ -0,0 +1,145 @@
+package bench;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Writes a complete simulator input (a {@link RoadNetwork} city, shops,
+ * taxis and client requests) in the exact format SimulatorOne or
+ * SimulatorTwo reads from stdin. Everything is streamed, so the size of
+ * the output is limited only by the disk.
+ *
+ * <pre>
+ * java -cp benchmarks.jar bench.WorkloadGenerator [options] [--out file]
+ *
+ *   --format one|two       input format (default two)
+ *   --vertices N           city size (default 100000)
+ *   --degree D             mean roads per vertex, 2..8 (default 3)
+ *   --costs SPEC           uniform:LO:HI, normal:MEAN:SD or constant:C
+ *                          (default uniform:1:100)
+ *   --ties P               share of roads at the lowest cost (default 0.1)
+ *   --shops N / --taxis N / --clients N
+ *                          request mix (defaults 10, 100, 10000)
+ *   --seed S               random seed (default 1)
+ * </pre>
+ *
+ * Format one lists the clients on one line; format two adds the taxi
+ * stands and gives each client a destination shop. Shops, taxis and
+ * clients are drawn uniformly from all vertices.
+ */
+public final class WorkloadGenerator {
+    private String format = "two";
+    private long vertices = 100000;
+    private double degree = 3;
+    private RoadNetwork.Costs costs = RoadNetwork.Costs.uniform(1, 100);
+    private double ties = 0.1;
+    private int shops = 10;
+    private int taxis = 100;
+    private long clients = 10000;
+    private long seed = 1;
+    private String out = null;      // stdout if null
+
+    public static void main(String[] args) throws IOException {
+        WorkloadGenerator g = new WorkloadGenerator();
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length)
+                usage("Missing value for " + args[i]);
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--format":
+                    if (!value.equals("one") && !value.equals("two"))
+                        usage("Format must be one or two: " + value);
+                    g.format = value;
+                    break;
+                case "--vertices":
+                    g.vertices = Long.parseLong(value);
+                    break;
+                case "--degree":
+                    g.degree = Double.parseDouble(value);
+                    break;
+                case "--costs":
+                    g.costs = RoadNetwork.Costs.parse(value);
+                    break;
+                case "--ties":
+                    g.ties = Double.parseDouble(value);
+                    break;
+                case "--shops":
+                    g.shops = Integer.parseInt(value);
+                    break;
+                case "--taxis":
+                    g.taxis = Integer.parseInt(value);
+                    break;
+                case "--clients":
+                    g.clients = Long.parseLong(value);
+                    break;
+                case "--seed":
+                    g.seed = Long.parseLong(value);
+                    break;
+                case "--out":
+                    g.out = value;
+                    break;
+                default:
+                    usage("Unknown option " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        OutputStream stream = g.out == null ? System.out : new FileOutputStream(g.out);
+        try (AsciiOut text = new AsciiOut(new BufferedOutputStream(stream, 1 << 16))) {
+            g.write(text);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("wrote %d bytes in %.1f s (%.0f MB/s)%n", text.bytesWritten(), seconds,
+                    text.bytesWritten() / seconds / 1e6);
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: bench.WorkloadGenerator [--format one|two] [--vertices N] [--degree D]"
+                + " [--costs SPEC] [--ties P] [--shops N] [--taxis N] [--clients N] [--seed S] [--out file]");
+        System.exit(2);
+    }
+
+    void write(AsciiOut text) throws IOException {
+        new RoadNetwork(vertices, degree, costs, ties, seed).write(text);
+        Random random = new Random(seed);
+
+        long[] shopIds = new long[shops];
+        for (int i = 0; i < shops; i++)
+            shopIds[i] = vertex(random);
+        text.write(shops).write('\n');
+        line(text, shopIds);
+
+        if (format.equals("two")) {
+            text.write(taxis).write('\n');
+            for (int i = 0; i < taxis; i++)
+                text.write(i == 0 ? "" : " ").write(vertex(random));
+            text.write('\n');
+        }
+
+        text.write(clients).write('\n');
+        for (long i = 0; i < clients; i++) {
+            if (format.equals("one")) {
+                text.write(i == 0 ? "" : " ").write(vertex(random));
+            } else {
+                text.write(vertex(random)).write(' ');
+                text.write(shops == 0 ? vertex(random) : shopIds[random.nextInt(shops)]).write('\n');
+            }
+        }
+        if (format.equals("one"))
+            text.write('\n');
+    }
+
+    private long vertex(Random random) {
+        return (long) (random.nextDouble() * vertices);
+    }
+
+    private static void line(AsciiOut text, long[] ids) throws IOException {
+        for (int i = 0; i < ids.length; i++)
+            text.write(i == 0 ? "" : " ").write(ids[i]);
+        text.write('\n');
+    }
+}
@@ -0,0 +1,122 @@
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import bench.Simulator;
+import bench.Workload;
+
+// SimulatorOne as seen by the JMH benchmarks; registered as the
+// bench.Simulator service of the part_one benchmark jar.
+public class SimulatorOneBench implements Simulator {
+    private final ResultWriter sink =
+            new ResultWriter(OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+    private SimulatorOne simulator;
+    private List<String> shops;
+    private List<String> clients;
+
+    @Override
+    public void loadText(InputStream in, long cacheBytes, boolean reorder) {
+        SimulatorOne s = new SimulatorOne();
+        s.setCacheBytes(cacheBytes);
+        s.setReorder(reorder);
+        InputReader reader = new InputReader(in);
+        s.readEdges(reader, reader.readIntLine());
+        s.graph();
+        simulator = s;
+    }
+
+    @Override
+    public void loadSnapshot(Path file, long cacheBytes) throws IOException {
+        SimulatorOne s = new SimulatorOne();
+        s.setCacheBytes(cacheBytes);
+        s.loadSnapshot(file.toString());
+        simulator = s;
+    }
+
+    @Override
+    public void writeSnapshot(Path file) throws IOException {
+        GraphSnapshot.write(simulator.graph(), file);
+    }
+
+    @Override
+    public int vertexCount() {
+        return simulator.graph().vertexCount();
+    }
+
+    @Override
+    public void requests(Workload w) {
+        shops = w.shops;
+        clients = w.clients;
+    }
+
+    @Override
+    public String router(String kind) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        switch (kind) {
+            case "dijkstra":
+                return "dijkstra";
+            case "alt":
+                return simulator.landmarks(16, threads);
+            case "ch":
+                return simulator.contract(threads);
+            default:
+                throw new IllegalArgumentException("Unknown router: " + kind);
+        }
+    }
+
+    @Override
+    public void metrics(boolean on) {
+        SearchMetrics.enable(on);
+    }
+
+    @Override
+    public void radixHeap(boolean on) {
+        CsrGraph g = simulator.graph();
+        g.integral = on && CsrGraph.integral(g.weights);
+    }
+
+    @Override
+    public void dijkstra(String source) {
+        simulator.dijkstra(source);
+    }
+
+    @Override
+    public Object fullTree(String source, ForkJoinPool pool) {
+        CsrGraph g = simulator.graph();
+        int s = g.id(source);
+        return pool == null ? ShortestPaths.dijkstra(g, s, false).snapshot() : DeltaStepping.tree(g, s, false, pool);
+    }
+
+    @Override
+    public double[] getDistance(String source, String dest) {
+        return simulator.getDistance(source, dest);
+    }
+
+    @Override
+    public void updateEdge(int e, double cost, boolean repair) {
+        CsrGraph g = simulator.graph();
+        e = Math.floorMod(e, g.edgeCount());
+        int lo = 0, hi = g.vertexCount() - 1;  // Source: last v with offsets[v] <= e
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (g.offsets[mid] <= e)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        simulator.updateEdge(g.name(lo), g.name(g.targets[e]), cost);
+        if (!repair)
+            simulator.treeCache().invalidate(g);
+    }
+
+    @Override
+    public boolean processRequest(int i) {
+        boolean helped = SimulatorOne.processRequest(clients.get(i), simulator, shops, sink);
+        sink.flush();
+        return helped;
+    }
+}
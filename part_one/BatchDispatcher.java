@@ -0,0 +1,133 @@
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BooleanSupplier;
+
+// Runs client requests on a pool of worker threads and writes what each
+// one printed in input order, so the output is byte for byte the same
+// as processing them one after another.
+//
+// Each request prints into its own buffer; at most a few requests per
+// thread are in flight, so memory stays bounded however long the batch.
+// An exclusive request (one that changes what later requests see) waits
+// for every earlier request to be written and then runs alone.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void run( Iterable<Request> r, ResultWriter out )
+//                   --> Process r in parallel, print in order
+// void run( Iterator<Request> r, ResultWriter out, BooleanSupplier ready )
+//                   --> Same for an unbounded stream; out is flushed
+//                       whenever ready says r would block
+// static Request exclusive( Request r )
+//                   --> r, to be run alone
+class BatchDispatcher {
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    // One client request, printing to the given writer.
+    interface Request {
+        void process(ResultWriter out);
+
+        default boolean exclusive() {
+            return false;
+        }
+    }
+
+    /**
+     * Return a request that runs r with no other request in flight.
+     */
+    static Request exclusive(Request r) {
+        return new Request() {
+            @Override
+            public void process(ResultWriter out) {
+                r.process(out);
+            }
+
+            @Override
+            public boolean exclusive() {
+                return true;
+            }
+        };
+    }
+
+    private final int threads;
+
+    public BatchDispatcher(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Process requests in parallel and copy their output to out in
+     * input order, each as soon as all earlier ones are done.
+     */
+    public void run(Iterable<? extends Request> requests, ResultWriter out) {
+        run(requests.iterator(), out, () -> true);
+    }
+
+    /**
+     * Same, for requests read from a stream as they arrive. ready tells
+     * whether the next request can be had without blocking; if not,
+     * the requests in flight are finished and out is flushed first, so
+     * no answer waits for the next line of input. No more requests are
+     * taken while the in-flight limit is reached.
+     */
+    public void run(Iterator<? extends Request> requests, ResultWriter out, BooleanSupplier ready) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ArrayDeque<ForkJoinTask<Output>> pending = new ArrayDeque<ForkJoinTask<Output>>();
+            while (true) {
+                boolean more = ready.getAsBoolean();
+                if (pending.size() < threads * IN_FLIGHT_PER_THREAD && (more || pending.isEmpty())) {
+                    if (!more)
+                        out.flush();
+                    if (!requests.hasNext())
+                        break;
+                    Request request = requests.next();
+                    if (request.exclusive()) {
+                        while (!pending.isEmpty())
+                            pending.remove().join().writeTo(out);
+                        request.process(out);
+                    }
+                    else {
+                        pending.add(pool.submit(() -> Output.of(request)));
+                    }
+                }
+                else {
+                    pending.remove().join().writeTo(out);
+                }
+            }
+            while (!pending.isEmpty())
+                pending.remove().join().writeTo(out);
+            out.flush();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // What one request printed to each stream.
+    private static class Output {
+        final byte[] out;
+        final byte[] err;
+
+        Output(byte[] out, byte[] err) {
+            this.out = out;
+            this.err = err;
+        }
+
+        static Output of(Request request) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            ResultWriter w = new ResultWriter(out, err, 1024);
+            request.process(w);
+            w.flush();
+            return new Output(out.toByteArray(), err.toByteArray());
+        }
+
+        void writeTo(ResultWriter w) {
+            w.write(out, 0, out.length);
+            w.writeError(err, 0, err.length);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+// Byte-level reader for the simulators' line-oriented input.
+//
+// Reads through one reusable buffer, splits lines into whitespace
+// separated tokens like StringTokenizer, and parses numbers straight
+// from the bytes. Vertex names that are plain decimal numbers are
+// interned by value, so loading a graph with numeric node ids creates
+// one String per vertex rather than one per token.
+//
+// ******************PUBLIC OPERATIONS**********************
+// boolean nextLine( )        --> Move to the next line; false at end
+// boolean ready( )           --> Whether nextLine( ) would not block
+// boolean hasMoreTokens( )   --> Tokens left on the current line
+// String nextToken( )        --> Next token of the current line
+// int nextInt( )             --> Next token as an int
+// int nextVertex( CsrGraph.Builder b )
+//                            --> Next token interned as a vertex of b
+// int readIntLine( )         --> Next line, holding a single int
+// long bytesRead( )          --> Input consumed so far
+// void transferRest( OutputStream out )
+//                            --> Copy the lines after this one to out
+// ******************ERRORS*********************************
+// NoSuchElementException when a line or token is missing,
+// NumberFormatException for malformed numbers.
+class InputReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private byte[] token = new byte[64];    // Bytes of a token being read
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0;      // Bytes before buf[0]
+    private boolean inLine = false; // Positioned inside a line
+    private boolean eof = false;
+
+    public InputReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Skip what is left of the current line and move to the start of
+     * the next one. Returns false if the input is exhausted.
+     */
+    public boolean nextLine() {
+        if (inLine) {
+            int c;
+            while ((c = peek()) != -1 && c != '\n')
+                pos++;
+            if (c == '\n')
+                pos++;
+        }
+        inLine = peek() != -1;
+        return inLine;
+    }
+
+    /**
+     * Whether nextLine() can return without waiting for more input:
+     * the next line has started in the buffer, the input has ended, or
+     * the stream has bytes available.
+     */
+    public boolean ready() {
+        int at = pos;
+        if (inLine) {
+            while (at < limit && buf[at] != '\n')
+                at++;
+            at++;
+        }
+        if (at < limit || eof)
+            return true;
+        try {
+            return in.available() > 0;
+        } catch (IOException e) {
+            return true;    // Let the read report it
+        }
+    }
+
+    /**
+     * Whether the current line has another token.
+     */
+    public boolean hasMoreTokens() {
+        if (!inLine)
+            return false;
+        int c;
+        while ((c = peek()) == ' ' || c == '\t' || c == '\r' || c == '\f')
+            pos++;
+        return c != -1 && c != '\n';
+    }
+
+    public String nextToken() {
+        requireToken();
+        return readToken(0);
+    }
+
+    public int nextInt() {
+        requireToken();
+        boolean negative = false;
+        if (peek() == '-' || peek() == '+') {
+            negative = peek() == '-';
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        int c;
+        while (!isDelimiter(c = peek())) {
+            if (c < '0' || c > '9' || ++digits > 10)
+                throw new NumberFormatException("Not an int at byte " + bytesRead());
+            value = value * 10 + (c - '0');
+            pos++;
+        }
+        if (negative)
+            value = -value;
+        if (digits == 0 || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException("Not an int at byte " + bytesRead());
+        return (int) value;
+    }
+
+    /**
+     * Read the next token as a vertex name and return its id in b.
+     * Canonical decimal names (no sign, no leading zeros) are interned
+     * by value without building a String for the token.
+     */
+    public int nextVertex(CsrGraph.Builder b) {
+        requireToken();
+        long value = 0;
+        int digits = 0;
+        boolean leadingZero = peek() == '0';
+        int c;
+        while ((c = peek()) >= '0' && c <= '9' && digits < CsrGraph.Builder.MAX_NUMERIC_DIGITS) {
+            value = value * 10 + (c - '0');
+            digits++;
+            pos++;
+        }
+        if (digits > 0 && isDelimiter(peek()) && (digits == 1 || !leadingZero))
+            return b.intern(value);
+
+        // Not a plain number: the digits read so far start the name
+        for (int i = digits - 1; i >= 0; i--, value /= 10)
+            put(i, (byte) ('0' + value % 10));
+        return b.intern(readToken(digits));
+    }
+
+    /**
+     * Read a line holding a single int, as Integer.parseInt(nextLine())
+     * would, but tolerating surrounding blanks.
+     */
+    public int readIntLine() {
+        if (!nextLine())
+            throw new NoSuchElementException("No line found");
+        int value = nextInt();
+        if (hasMoreTokens())
+            throw new NumberFormatException("Extra input after int at byte " + bytesRead());
+        return value;
+    }
+
+    public long bytesRead() {
+        return consumed + pos;
+    }
+
+    /**
+     * Skip the rest of the current line and copy everything after it,
+     * unparsed, to out.
+     */
+    public void transferRest(OutputStream out) throws IOException {
+        if (inLine) {
+            nextLine();
+            inLine = false;
+        }
+        while (peek() != -1) {
+            out.write(buf, pos, limit - pos);
+            pos = limit;
+        }
+    }
+
+    /**
+     * Read the rest of a token whose first length bytes are already in
+     * token, and decode it as Scanner would.
+     */
+    private String readToken(int length) {
+        int c;
+        while (!isDelimiter(c = peek())) {
+            put(length++, (byte) c);
+            pos++;
+        }
+        return new String(token, 0, length, Charset.defaultCharset());
+    }
+
+    private void put(int i, byte b) {
+        if (i >= token.length)
+            token = Arrays.copyOf(token, token.length * 2);
+        token[i] = b;
+    }
+
+    private void requireToken() {
+        if (!hasMoreTokens())
+            throw new NoSuchElementException("No more tokens on line");
+    }
+
+    private static boolean isDelimiter(int c) {
+        return c == -1 || c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    /**
+     * Next byte without consuming it, or -1 at end of input.
+     */
+    private int peek() {
+        if (pos < limit)
+            return buf[pos] & 0xff;
+        if (eof)
+            return -1;
+        fill();
+        return pos < limit ? buf[pos] & 0xff : -1;
+    }
+
+    private void fill() {
+        consumed += pos;
+        limit = 0;
+        pos = 0;
+        try {
+            int n = in.read(buf, 0, buf.length);
+            if (n < 0)
+                eof = true;
+            else
+                limit = n;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// A* search with landmark lower bounds (ALT). For a few landmark
+// vertices L the costs d(L, v) and d(v, L) to and from every vertex are
+// stored, and by the triangle inequality
+//     d(v, t) >= max over L of d(L, t) - d(L, v) and d(v, L) - d(t, L)
+// which steers a search from s towards t instead of growing a ball
+// around s. Landmarks are picked one at a time as the vertex farthest
+// from all landmarks so far, which puts them around the edge of the map
+// where their bounds are tightest.
+//
+// The bound is consistent, so A* settles vertices in order of cost plus
+// bound and every vertex's cost is final when settled. Ties in that
+// order go to the smaller cost, so with positive edge costs every
+// predecessor on a shortest path is settled first and path counts come
+// out exactly as Dijkstra's. Costs are kept as ints, which also keeps
+// the bounds exact; fits() tells whether a graph allows that.
+//
+// Tables are vertex-major, slot v * k + i for k landmarks, so one bound
+// reads two short runs of each array.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static boolean fits( CsrGraph g ) --> Whether g has positive integral
+//                                       costs small enough for int tables
+// static Landmarks build( CsrGraph g, int k, int threads )
+//                            --> Pick k landmarks and search them
+// Route route( int s, int t ) --> Cost, path count and route s to t
+// String stats( )            --> Landmarks, memory and build time
+// ******************ERRORS*********************************
+// GraphException if build is given a graph that does not fit.
+class Landmarks implements Router {
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    final CsrGraph graph;
+    final int[] landmarks;
+    private final int[] from;       // d(L, v) at v * k + i, UNREACHED if none
+    private final int[] to;         // d(v, L)
+    private long buildNanos;
+
+    private Landmarks(CsrGraph graph, int[] landmarks) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        long size = (long) landmarks.length * graph.vertexCount();
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many landmarks: " + landmarks.length);
+        from = new int[(int) size];
+        to = new int[(int) size];
+    }
+
+    /**
+     * Whether every cost of g is a positive integer and no shortest
+     * path can cost more than an int holds.
+     */
+    public static boolean fits(CsrGraph g) {
+        if (g.minWeight <= 0 && g.edgeCount() > 0)
+            return false;
+        double total = 0;
+        double max = 0;
+        for (double w : g.weights) {
+            if (w != Math.rint(w))
+                return false;
+            total += w;
+            max = Math.max(max, w);
+        }
+        return Math.min(total, max * g.vertexCount()) < UNREACHED;
+    }
+
+    /**
+     * Pick k landmarks (at most one per vertex) by farthest-point
+     * selection and search their trees, the reverse ones on threads
+     * worker threads.
+     */
+    public static Landmarks build(CsrGraph g, int k, int threads) {
+        if (!fits(g))
+            throw new GraphException("Landmarks need positive integral costs");
+        long start = System.nanoTime();
+        int n = g.vertexCount();
+        Landmarks result = new Landmarks(g, new int[Math.min(k, n)]);
+
+        // Each pick needs the forward trees of the ones before, so these
+        // searches run in turn, each on all cores of a large graph. With
+        // positive costs only landmarks are at cost 0 from the nearest
+        // one, so there is always a next pick.
+        double[] nearest = new double[n];   // Cost from the closest landmark so far
+        int count = result.landmarks.length;
+        int next = 0;
+        if (count > 0) {
+            ShortestPathTree tree = DeltaStepping.tree(g, 0, false);
+            for (int v = 0; v < n; v++)
+                nearest[v] = tree.dist(v);
+            next = Math.max(0, farthest(nearest));  // 0 itself if it reaches nothing
+        }
+        Arrays.fill(nearest, ShortestPaths.INFINITY);
+        for (int i = 0; i < count; i++) {
+            result.landmarks[i] = next;
+            ShortestPathTree tree = DeltaStepping.tree(g, next, false);
+            result.fill(i, tree, result.from);
+            for (int v = 0; v < n; v++)
+                nearest[v] = Math.min(nearest[v], tree.dist(v));
+            next = farthest(nearest);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(count);
+            for (int i = 0; i < count; i++) {
+                final int column = i;
+                tasks.add(() -> {
+                    ShortestPathTree tree = ShortestPaths.dijkstra(g, result.landmarks[column], true);
+                    result.fill(column, tree, result.to);
+                    return null;
+                });
+            }
+            for (Future<Void> done : pool.invokeAll(tasks))
+                done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching landmarks", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        result.buildNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * The vertex of largest cost, unreached ones first; -1 if all
+     * costs are 0.
+     */
+    private static int farthest(double[] costs) {
+        int best = -1;
+        double bestCost = 0;
+        for (int v = 0; v < costs.length; v++) {
+            if (costs[v] > bestCost) {
+                best = v;
+                bestCost = costs[v];
+            }
+        }
+        return best;
+    }
+
+    private void fill(int column, ShortestPathTree tree, int[] table) {
+        int k = landmarks.length;
+        for (int v = 0, slot = column; v < graph.vertexCount(); v++, slot += k) {
+            double d = tree.dist(v);
+            table[slot] = d == ShortestPaths.INFINITY ? UNREACHED : (int) d;
+        }
+    }
+
+    /**
+     * Lower bound on the cost from v to t, INFINITY if some landmark
+     * shows t cannot be reached from v.
+     */
+    double bound(int v, int t) {
+        int k = landmarks.length;
+        int bv = v * k;
+        int bt = t * k;
+        int best = 0;
+        for (int i = 0; i < k; i++) {
+            int lv = from[bv + i];
+            int lt = from[bt + i];
+            if (lv != UNREACHED) {
+                if (lt == UNREACHED)       // L reaches v but not t
+                    return ShortestPaths.INFINITY;
+                best = Math.max(best, lt - lv);
+            }
+            int vl = to[bv + i];
+            int tl = to[bt + i];
+            if (tl != UNREACHED) {
+                if (vl == UNREACHED)       // t reaches L but v does not
+                    return ShortestPaths.INFINITY;
+                best = Math.max(best, vl - tl);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A* from s that stops once t is settled.
+     */
+    @Override
+    public Route route(int s, int t) {
+        SearchSpace space = SearchSpace.local(graph, 0);
+        space.reset();
+        IndexedHeap heap = space.guided();
+        double[] dist = space.dist;
+        double[] estimate = space.estimate;
+        double[] potential = space.potential;
+        int[] prev = space.prev;
+        int[] paths = space.paths;
+
+        space.touch(s);
+        dist[s] = 0;
+        paths[s] = 1;
+        potential[s] = bound(s, t);
+        estimate[s] = potential[s];
+        if (potential[s] != ShortestPaths.INFINITY)
+            heap.add(s);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            space.order[space.settledCount++] = v;
+            if (v == t)
+                break;
+            double dv = dist[v];
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int w = graph.targets[e];
+                double dw = dv + graph.weights[e];
+                if (!space.touched(w)) {
+                    space.touch(w);
+                    potential[w] = bound(w, t);
+                }
+                if (potential[w] == ShortestPaths.INFINITY)
+                    continue;
+
+                if (dist[w] > dw) {
+                    dist[w] = dw;
+                    prev[w] = v;
+                    paths[w] = paths[v];
+                    estimate[w] = dw + potential[w];
+                    if (heap.contains(w))
+                        heap.decreased(w);
+                    else
+                        heap.add(w);
+                }
+                else if (dist[w] == dw) {
+                    paths[w] = ShortestPaths.addPaths(paths[w], paths[v]);
+                }
+            }
+        }
+        return Route.of(new ShortestPathTree(graph, s, false, space.dist(t), space), t);
+    }
+
+    public long bytes() {
+        return 8L * from.length;
+    }
+
+    @Override
+    public String stats() {
+        return "landmarks: " + landmarks.length + " x " + graph.vertexCount() + " vertices, "
+                + bytes() + " bytes, built in " + buildNanos / 1000000 + " ms";
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.Arrays;
+
+// Monotone radix heap of vertex ids with decrease-key, for Dijkstra
+// over whole-number edge costs.
+//
+// Keys are read from keys[id] as longs. Every key in the heap is at
+// least last, the key of the last minimum found, and bucket b > 0
+// holds the ids whose keys first differ from last in bit b - 1, bucket
+// 0 those equal to it. Finding the minimum takes the lowest non-empty
+// bucket; when that is not bucket 0, its smallest key becomes last and
+// its ids move to lower buckets. An id only ever moves down, so each
+// costs O(log C) moves over its life for keys spanning C, and ids are
+// never compared with each other. Buckets are intrusive doubly linked
+// lists, so decrease-key is O(1).
+//
+// Keys added or lowered must never be below the last key polled or
+// peeked, which holds for Dijkstra with non-negative costs.
+//
+// ******************PUBLIC OPERATIONS**********************
+// Same as IndexedHeap (see VertexQueue)
+class RadixHeap implements VertexQueue {
+    private static final int BUCKETS = 65;
+
+    private final double[] keys;
+    private final int[] head = new int[BUCKETS];    // First id of each bucket, -1 if empty
+    private final int[] next;
+    private final int[] prev;
+    private final byte[] bucket;        // Bucket of each id, -1 if absent
+    private long last = 0;
+    private int size = 0;
+
+    public RadixHeap(double[] keys) {
+        this.keys = keys;
+        next = new int[keys.length];
+        prev = new int[keys.length];
+        bucket = new byte[keys.length];
+        Arrays.fill(head, -1);
+        Arrays.fill(bucket, (byte) -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int v) {
+        return bucket[v] >= 0;
+    }
+
+    public void add(int v) {
+        link(v, bucketOf((long) keys[v]));
+        size++;
+    }
+
+    /**
+     * Move v to the bucket of its lowered key.
+     */
+    public void decreased(int v) {
+        int b = bucketOf((long) keys[v]);
+        if (b != bucket[v]) {
+            unlink(v);
+            link(v, b);
+        }
+    }
+
+    public double peekKey() {
+        if (head[0] < 0)
+            refill();
+        return keys[head[0]];
+    }
+
+    public int poll() {
+        if (head[0] < 0)
+            refill();
+        int v = head[0];
+        unlink(v);
+        bucket[v] = -1;
+        size--;
+        return v;
+    }
+
+    /**
+     * Remove every entry; O(size), not O(capacity).
+     */
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int v = head[b]; v >= 0; v = next[v])
+                bucket[v] = -1;
+            head[b] = -1;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    /**
+     * Make the smallest key the new last, moving the ids of the lowest
+     * non-empty bucket down; bucket 0 is then non-empty.
+     */
+    private void refill() {
+        int b = 1;
+        while (head[b] < 0)
+            b++;
+        long min = Long.MAX_VALUE;
+        for (int v = head[b]; v >= 0; v = next[v])
+            min = Math.min(min, (long) keys[v]);
+        last = min;
+        int v = head[b];
+        head[b] = -1;
+        while (v >= 0) {
+            int after = next[v];
+            link(v, bucketOf((long) keys[v]));
+            v = after;
+        }
+    }
+
+    private int bucketOf(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void link(int v, int b) {
+        int first = head[b];
+        next[v] = first;
+        prev[v] = -1;
+        if (first >= 0)
+            prev[first] = v;
+        head[b] = v;
+        bucket[v] = (byte) b;
+    }
+
+    private void unlink(int v) {
+        int before = prev[v];
+        int after = next[v];
+        if (before >= 0)
+            next[before] = after;
+        else
+            head[bucket[v]] = after;
+        if (after >= 0)
+            prev[after] = before;
+    }
+}
@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Long-running dispatch over an unbounded stream of events, one per
+// line, so the graph is loaded once for any number of requests.
+//
+// Each non-blank line is split into words and handed to a Handler,
+// which turns it into a BatchDispatcher.Request. Client requests run on
+// the worker threads; events that change what later requests see
+// (taxis, shops, road costs) are exclusive and run alone. Lines are only
+// read while fewer than a few requests per thread are in flight, so a
+// producer that outpaces the workers is held back by its pipe or socket
+// rather than by a growing queue, and output is flushed whenever no
+// further line is ready, so no answer waits on the next event.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void serve( InputReader in, ResultWriter out )
+//                   --> Handle the events of in until end of input
+// void listen( int port ) --> Serve each connection to port on the
+//                             loopback address in turn, forever
+// static void expect( String[] w, int n ) / String vertex( CsrGraph g, String v )
+// static void remove( List l, String v )
+//                   --> Checks for handlers
+// ******************ERRORS*********************************
+// An event that names an unknown vertex, has the wrong words or
+// cannot be applied is reported as "bad event" on the error stream,
+// and the stream goes on.
+class RequestStream {
+
+    // Turns the words of one event line into the request answering it.
+    interface Handler {
+        BatchDispatcher.Request event(String[] words);
+    }
+
+    private final Handler handler;
+    private final BatchDispatcher dispatcher;
+
+    public RequestStream(Handler handler, int threads) {
+        this.handler = handler;
+        this.dispatcher = new BatchDispatcher(threads);
+    }
+
+    /**
+     * Handle every event of in, printing the answers to out in order.
+     */
+    public void serve(InputReader in, ResultWriter out) {
+        dispatcher.run(new Events(in), out, in::ready);
+    }
+
+    /**
+     * Accept connections to port on the loopback address, one at a
+     * time, and serve the events each one sends, answering on the same
+     * connection. State changed by one connection stays for the next.
+     */
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            while (true) {
+                try (Socket socket = server.accept()) {
+                    ResultWriter out = new ResultWriter(socket.getOutputStream(), socket.getOutputStream());
+                    serve(new InputReader(socket.getInputStream()), out);
+                } catch (IOException | UncheckedIOException e) {
+                    System.err.println("connection lost: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Run request, reporting a failure to apply the event as a bad
+     * event; keeps request's exclusiveness.
+     */
+    private static BatchDispatcher.Request guarded(String line, BatchDispatcher.Request request) {
+        BatchDispatcher.Request guarded = out -> {
+            try {
+                request.process(out);
+            } catch (NoSuchElementException | IllegalArgumentException | GraphException e) {
+                out.error(badEvent(line, e));
+            }
+        };
+        return request.exclusive() ? BatchDispatcher.exclusive(guarded) : guarded;
+    }
+
+    /**
+     * Check that an event has exactly count words.
+     */
+    static void expect(String[] words, int count) {
+        if (words.length != count)
+            throw new IllegalArgumentException("expected " + count + " words");
+    }
+
+    /**
+     * Check that name is a vertex of g.
+     */
+    static String vertex(CsrGraph g, String name) {
+        if (g.id(name) < 0)
+            throw new NoSuchElementException("vertex " + name + " not found");
+        return name;
+    }
+
+    /**
+     * Remove one occurrence of name from names.
+     */
+    static void remove(List<String> names, String name) {
+        if (!names.remove(name))
+            throw new NoSuchElementException(name + " not listed");
+    }
+
+    private static String badEvent(String line, RuntimeException e) {
+        return "bad event: " + line + " (" + e.getMessage() + ")";
+    }
+
+    // The requests of the event lines of one input, read as they are
+    // asked for.
+    private class Events implements Iterator<BatchDispatcher.Request> {
+        private final InputReader in;
+        private BatchDispatcher.Request next;
+
+        Events(InputReader in) {
+            this.in = in;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && in.nextLine()) {
+                List<String> words = new ArrayList<String>();
+                while (in.hasMoreTokens())
+                    words.add(in.nextToken());
+                if (words.isEmpty())
+                    continue;
+                String line = String.join(" ", words);
+                try {
+                    next = guarded(line, handler.event(words.toArray(new String[0])));
+                } catch (NoSuchElementException | IllegalArgumentException | GraphException e) {
+                    String message = badEvent(line, e);
+                    next = out -> out.error(message);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public BatchDispatcher.Request next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            BatchDispatcher.Request request = next;
+            next = null;
+            return request;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+
+// Buffered output stage for dispatch results.
+//
+// Lines are encoded straight into one reusable byte buffer, ASCII
+// without any intermediate objects, and reach the underlying stream
+// only when the buffer fills or on flush(), instead of one
+// synchronized, autoflushing PrintStream write per name. Routes are
+// written from their vertex array in one loop. Error lines go to a
+// second stream after flushing everything written before them, so the
+// two streams interleave exactly as unbuffered println would.
+// A writer must only be used by one thread at a time.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void println( String s )   --> s and a line separator
+// void path( CsrGraph g, int[] vertices )
+//                            --> Names of vertices on one line
+// void error( String s )     --> s on the error stream, in order
+// void write( byte[] b, ... ) / writeError( byte[] b, ... )
+//                            --> Copy already encoded output
+// void flush( )              --> Push everything to the streams
+class ResultWriter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(CHARSET);
+
+    private final OutputStream out;
+    private final OutputStream err;
+    private final byte[] buf;
+    private int count = 0;
+
+    public ResultWriter(OutputStream out, OutputStream err) {
+        this(out, err, BUFFER_SIZE);
+    }
+
+    public ResultWriter(OutputStream out, OutputStream err, int bufferSize) {
+        this.out = out;
+        this.err = err;
+        this.buf = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * A writer over System.out and System.err.
+     */
+    public static ResultWriter system() {
+        return new ResultWriter(System.out, System.err);
+    }
+
+    public void print(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {        // Leave anything but ASCII to the charset
+                byte[] bytes = s.substring(i).getBytes(CHARSET);
+                write(bytes, 0, bytes.length);
+                return;
+            }
+            if (count == buf.length)
+                drain();
+            buf[count++] = (byte) c;
+        }
+    }
+
+    public void println(String s) {
+        print(s);
+        println();
+    }
+
+    public void println() {
+        write(NEWLINE, 0, NEWLINE.length);
+    }
+
+    /**
+     * Write the names of the given vertices of g, separated by spaces,
+     * as one line.
+     */
+    public void path(CsrGraph g, int[] vertices) {
+        for (int i = 0; i < vertices.length; i++) {
+            if (i > 0) {
+                if (count == buf.length)
+                    drain();
+                buf[count++] = ' ';
+            }
+            print(g.name(vertices[i]));
+        }
+        println();
+    }
+
+    /**
+     * Write s as a line of the error stream, after all output so far.
+     */
+    public void error(String s) {
+        byte[] bytes = (s + System.lineSeparator()).getBytes(CHARSET);
+        writeError(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] bytes, int off, int len) {
+        if (len > buf.length - count) {
+            drain();
+            if (len > buf.length) {
+                put(out, bytes, off, len);
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, buf, count, len);
+        count += len;
+    }
+
+    public void writeError(byte[] bytes, int off, int len) {
+        if (len == 0)
+            return;
+        flush();
+        put(err, bytes, off, len);
+        try {
+            err.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hand the buffer to the output stream without flushing it.
+     */
+    private void drain() {
+        if (count > 0) {
+            put(out, buf, 0, count);
+            count = 0;
+        }
+    }
+
+    private static void put(OutputStream stream, byte[] bytes, int off, int len) {
+        try {
+            stream.write(bytes, off, len);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
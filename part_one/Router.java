@@ -0,0 +1,17 @@
+
+// A point-to-point route index prepared over one CsrGraph, answering
+// each leg with a search much smaller than plain Dijkstra's. Path
+// counts must match Dijkstra's exactly, so "multiple solutions" output
+// is the same whichever index answers.
+//
+// Implementations keep per-query state in the calling thread's
+// SearchSpace, so one index can serve many threads at once.
+//
+// ******************PUBLIC OPERATIONS**********************
+// Route route( int s, int t ) --> Cost, path count and route s to t
+// String stats( )            --> Size and preprocessing time
+interface Router {
+    Route route(int s, int t);
+
+    String stats();
+}
@@ -0,0 +1,159 @@
+
+import java.util.Arrays;
+
+// Reusable per-query search state: tentative costs, predecessors, path
+// counts, settle order and heap for one search over a graph of up to
+// capacity() vertices.
+//
+// Instead of clearing O(V) arrays before each search, every vertex
+// carries the generation in which it was last touched; reset() just
+// bumps the generation, and a vertex from an older one reads as
+// unreached. A space must only be used by one thread at a time, so
+// each thread gets its own from local(); the graph itself is shared.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void reset( )              --> Forget every vertex, O(1)
+// void touch( int v )        --> Make v's slots current before writing
+// double dist( int v ) / int prev( int v ) / int paths( int v )
+//                            --> Results, unreached if v not touched
+// void mark( int v ) / boolean marked( int v )
+//                            --> Per-search flag (search goals)
+// IndexedHeap guided( )      --> Heap by estimate, for A* searches
+// RadixHeap radix( )         --> Queue by dist for whole-number costs
+// static SearchSpace local( CsrGraph g, int slot )
+//                            --> This thread's space number slot
+class SearchSpace {
+    private static final ThreadLocal<SearchSpace[]> LOCAL =
+            ThreadLocal.withInitial(() -> new SearchSpace[2]);
+
+    final double[] dist;
+    final int[] prev;
+    final int[] paths;
+    final int[] order;          // Vertices in the order they were settled
+    int settledCount = 0;
+    final IndexedHeap heap;
+    double[] estimate;          // dist plus potential; null until guided()
+    double[] potential;         // Lower bound on the cost left to the goal
+    private IndexedHeap guided;
+    private RadixHeap radix;
+    private final int[] stamp;  // Generation that last touched v
+    private final int[] marks;  // Generation that last marked v
+    private int generation = 0;
+
+    public SearchSpace(int capacity) {
+        dist = new double[capacity];
+        prev = new int[capacity];
+        paths = new int[capacity];
+        order = new int[capacity];
+        stamp = new int[capacity];
+        marks = new int[capacity];
+        heap = new IndexedHeap(dist);
+    }
+
+    /**
+     * Return this thread's search space number slot (0 or 1), sized
+     * for g. Results read from it stay valid until the thread's next
+     * search in the same slot.
+     */
+    public static SearchSpace local(CsrGraph g, int slot) {
+        return local(g.vertexCount(), slot);
+    }
+
+    /**
+     * Same, for a graph of the given number of vertices.
+     */
+    public static SearchSpace local(int vertices, int slot) {
+        SearchSpace[] spaces = LOCAL.get();
+        SearchSpace space = spaces[slot];
+        if (space == null || space.capacity() != vertices) {
+            space = new SearchSpace(vertices);
+            spaces[slot] = space;
+        }
+        return space;
+    }
+
+    public int capacity() {
+        return stamp.length;
+    }
+
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * Start a new search. Only wraps around to an O(V) clear once
+     * every 2^32 searches.
+     */
+    public void reset() {
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(marks, 0);
+            generation = 1;
+        }
+        heap.clear();
+        if (guided != null)
+            guided.clear();
+        if (radix != null)
+            radix.clear();
+        settledCount = 0;
+    }
+
+    /**
+     * Initialise v's slots for this search if it was not reached yet.
+     */
+    public void touch(int v) {
+        if (stamp[v] != generation) {
+            stamp[v] = generation;
+            dist[v] = ShortestPaths.INFINITY;
+            prev[v] = -1;
+            paths[v] = 0;
+        }
+    }
+
+    public boolean touched(int v) {
+        return stamp[v] == generation;
+    }
+
+    public double dist(int v) {
+        return stamp[v] == generation ? dist[v] : ShortestPaths.INFINITY;
+    }
+
+    public int prev(int v) {
+        return stamp[v] == generation ? prev[v] : -1;
+    }
+
+    public int paths(int v) {
+        return stamp[v] == generation ? paths[v] : 0;
+    }
+
+    /**
+     * Heap ordered by estimate, ties going to the smaller dist, for
+     * goal-directed searches. The arrays are made on first use.
+     */
+    public IndexedHeap guided() {
+        if (guided == null) {
+            estimate = new double[capacity()];
+            potential = new double[capacity()];
+            guided = new IndexedHeap(estimate, dist);
+        }
+        return guided;
+    }
+
+    /**
+     * Radix heap keyed by dist, for searches over whole-number costs.
+     * Made on first use.
+     */
+    public RadixHeap radix() {
+        if (radix == null)
+            radix = new RadixHeap(dist);
+        return radix;
+    }
+
+    public void mark(int v) {
+        marks[v] = generation;
+    }
+
+    public boolean marked(int v) {
+        return marks[v] == generation;
+    }
+}
@@ -1,6 +1,8 @@
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
@@ -9,160 +11,279 @@ import java.util.LinkedList;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
-import java.util.Scanner;
-import java.util.StringTokenizer;
 import java.util.*;
 
-// Used to signal violations of preconditions for
-// various shortest path algorithms.
-class GraphException extends RuntimeException {
+// Graph class: evaluate shortest paths.
+//
+// CONSTRUCTION: with no parameters.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void addEdge( String v, String w, double cvw )
+// --> Add additional edge
+// void updateEdge( String v, String w, double cvw )
+// --> Change the cost of edge v -> w in place
+// void removeEdge( String v, String w ) --> Close edge v -> w
+// void dijkstra( String s ) --> Single-source weighted
+// ******************ERRORS*********************************
+// Some error checking is performed to make sure graph is ok,
+// and to make sure graph satisfies properties needed by each
+// algorithm. Exceptions are thrown if errors are detected.
+//
+// Edges are collected by a CsrGraph.Builder and frozen into an
+// immutable CsrGraph the first time a search runs after addEdge.
+// Searches themselves live in ShortestPaths. dijkstra, getDistance and
+// printPath share this instance's SearchSpace, so only one thread may
+// call them; processRequest only reads the frozen graph and searches in
+// per-thread spaces, so once graph() has been built it can run for many
+// clients at once.
+
+public class SimulatorOne {
+    public static final double INFINITY = ShortestPaths.INFINITY;
+    public static final int DEFAULT_CACHE_MB = 64;
+    private CsrGraph.Builder builder; // Edges added so far, null if none
+    private CsrGraph graph;         // Frozen view of builder, null if stale
+    private SearchSpace space;      // Search state owned by this instance
+    private ShortestPathTree tree;  // Result of the last dijkstra
+    private long cacheBytes = DEFAULT_CACHE_MB << 20;
+    private boolean reorder = true; // Renumber large graphs for locality
+    private TreeCache cache;        // Trees of frequent sources
+    private DispatchPlanner planner;
+    private Router router;          // Hierarchy or landmarks, null for Dijkstra
+    private Route route;            // Result of the last getDistance through router
+
     /**
-     * 
+     * Add a new edge to the graph.
      */
-    private static final long serialVersionUID = 1L;
+    public void addEdge(String sourceName, String destName, double cost) {
+        builder().addEdge(sourceName, destName, cost);
+        graph = null;
+        tree = null;
+    }
 
-    public GraphException(String name) {
-        super(name);
+    /**
+     * Change the cost of every edge from sourceName to destName, as
+     * when traffic builds up or clears. The graph is not rebuilt: cached
+     * trees and distance tables are repaired where they are, and only
+     * a contraction hierarchy or landmarks are discarded.
+     */
+    public void updateEdge(String sourceName, String destName, double cost) {
+        CsrGraph g = graph();
+        int v = g.id(sourceName);
+        int w = g.id(destName);
+        if (v < 0 || w < 0)
+            throw new NoSuchElementException("Edge vertex not found");
+        double old = g.setWeight(v, w, cost);
+        builder = null;     // Reopened from the graph, with the new cost, if needed
+        tree = null;
+        route = null;
+        if (router != null) {
+            router = null;
+            planner = planner.withRouter(null);
+        }
+        cache.repair(v, w, old);
+        planner.repair(v, w, old);
     }
-}
 
-// Represents an edge in the graph.
-class Edge {
-    public Vertex dest; // Second vertex in Edge
-    public double cost; // Edge cost
+    /**
+     * Close every edge from sourceName to destName; updateEdge can
+     * open it again.
+     */
+    public void removeEdge(String sourceName, String destName) {
+        updateEdge(sourceName, destName, CsrGraph.NO_EDGE);
+    }
 
-    public Edge(Vertex d, double c) {
-        dest = d;
-        cost = c;
+    /**
+     * Read lines adjacency lines ("source {dest cost}*") of the input
+     * format into the graph; returns the number of edges read.
+     */
+    public int readEdges(InputReader in, int lines) {
+        if (builder == null && graph == null)
+            builder = new CsrGraph.Builder(lines, 4 * lines);
+        CsrGraph.Builder b = builder();
+        graph = null;
+        tree = null;
+        return GraphLoader.readEdges(in, lines, b);
     }
-}
 
-// Represents an entry in the priority queue for Dijkstra's algorithm.
-class Path implements Comparable<Path> {
-    public Vertex dest; // w
-    public double cost; // d(w)
-    public List<Vertex> pathNodes; // List of vertices in the path
+    /**
+     * Replace the graph with the one saved in a binary snapshot.
+     */
+    public void loadSnapshot(String file) throws IOException {
+        builder = null;
+        useGraph(GraphSnapshot.open(Paths.get(file)));
+    }
 
-    public Path(Vertex d, double c) {
-        dest = d;
-        cost = c;
+    /**
+     * The builder collecting edges, reopened from the frozen graph
+     * if that came from a snapshot.
+     */
+    private CsrGraph.Builder builder() {
+        if (builder == null)
+            builder = graph == null ? new CsrGraph.Builder() : new CsrGraph.Builder(graph);
+        return builder;
     }
 
-    public int compareTo(Path rhs) {
-        double otherCost = rhs.cost;
+    /**
+     * Return the CSR view of the graph, rebuilding it if edges
+     * were added since the last call.
+     */
+    public CsrGraph graph() {
+        if (graph == null)
+            useGraph(reorder ? VertexOrder.local(builder().build()) : builder().build());
+        return graph;
+    }
 
-        return cost < otherCost ? -1 : cost > otherCost ? 1 : 0;
+    /**
+     * Make g the current graph and set up searches over it.
+     */
+    private void useGraph(CsrGraph g) {
+        graph = g;
+        tree = null;
+        router = null;
+        route = null;
+        space = new SearchSpace(graph.vertexCount());
+        if (cache == null)
+            cache = new TreeCache(graph, cacheBytes);
+        else
+            cache.invalidate(graph);
+        planner = new DispatchPlanner(graph, cache);
     }
-}
-
-// Represents a vertex in the graph.
-class Vertex {
-    public String name; // Vertex name
-    public List<Edge> adj; // Adjacent vertices
-    public double dist; // Cost
-    public Vertex prev; // Previous vertex on shortest path
-    public int scratch;// Extra variable used in algorithm
-    public int paths;
-
-    public Vertex(String nm) {
-        name = nm;
-        adj = new LinkedList<Edge>();
-        reset();
-        paths = 0;
+
+    /**
+     * Return the planner for client requests on the current graph.
+     */
+    public DispatchPlanner planner() {
+        graph();
+        return planner;
     }
 
-    public void reset()
-    // { dist = Graph.INFINITY; prev = null; pos = null; scratch = 0; }
-    {
-        dist = SimulatorOne.INFINITY;
-        prev = null;
-        scratch = 0;
+    /**
+     * Precompute distance tables from the pickup vertices and into the
+     * drop-off vertices, so requests among them are answered by table
+     * lookups alone. Returns a report of the tables' memory and build
+     * time. Adding an edge afterwards discards the tables.
+     */
+    public String precompute(List<String> pickups, List<String> dropOffs, int threads) {
+        CsrGraph g = graph();
+        DistanceTable from = DistanceTable.build(g, knownIds(pickups), false, threads);
+        DistanceTable into = DistanceTable.build(g, knownIds(dropOffs), true, threads);
+        planner = planner.withTables(from, into);
+        return from.stats() + "\n" + into.stats();
     }
 
+    /**
+     * Build a contraction hierarchy of the graph on threads threads
+     * and answer getDistance and client requests with it. Returns a
+     * report of its size and build time. Graphs with zero-cost edges
+     * keep Dijkstra, whose path counts the hierarchy cannot match.
+     * Adding an edge afterwards discards the hierarchy.
+     */
+    public String contract(int threads) {
+        ContractionHierarchy h = ContractionHierarchy.build(graph(), threads);
+        if (!h.countsPaths())
+            return "contraction hierarchy not used: graph has zero-cost edges";
+        return useRouter(h);
+    }
 
-    // public PairingHeap.Position<Path> pos; // Used for dijkstra2 (Chapter 23)
-}
+    /**
+     * Pick count landmarks, search their trees on threads threads and
+     * answer getDistance and client requests by A* with their bounds.
+     * Returns a report of the tables' size and build time. Graphs whose
+     * costs are not positive integers keep Dijkstra. Adding an edge
+     * afterwards discards the landmarks.
+     */
+    public String landmarks(int count, int threads) {
+        if (!Landmarks.fits(graph()))
+            return "landmarks not used: costs are not all positive integers";
+        return useRouter(Landmarks.build(graph, count, threads));
+    }
 
-// Graph class: evaluate shortest paths.
-//
-// CONSTRUCTION: with no parameters.
-//
-// ******************PUBLIC OPERATIONS**********************
-// void addEdge( String v, String w, double cvw )
-// --> Add additional edge
-// void dijkstra( String s ) --> Single-source weighted
-// ******************ERRORS*********************************
-// Some error checking is performed to make sure graph is ok,
-// and to make sure graph satisfies properties needed by each
-// algorithm. Exceptions are thrown if errors are detected.
+    private String useRouter(Router r) {
+        router = r;
+        route = null;
+        planner = planner.withRouter(r);
+        return r.stats();
+    }
 
-public class SimulatorOne {
-    public static final double INFINITY = Double.MAX_VALUE;
-    private Map<String, Vertex> vertexMap = new HashMap<String, Vertex>();
+    private int[] knownIds(List<String> names) {
+        return names.stream().mapToInt(graph::id).filter(v -> v >= 0).toArray();
+    }
 
     /**
-     * Add a new edge to the graph.
+     * Set the memory budget of the tree cache; 0 turns it off.
+     * Must be called before the first search.
      */
-    public void addEdge(String sourceName, String destName, double cost) {
-        Vertex v = getVertex(sourceName);
-        Vertex w = getVertex(destName);
-        v.adj.add(new Edge(w, cost));
+    public void setCacheBytes(long bytes) {
+        cacheBytes = bytes;
+    }
+
+    /**
+     * Whether graphs built from edges are renumbered for cache
+     * locality (see VertexOrder); on by default. Snapshots keep the
+     * order they were saved in, which GraphSnapshot renumbers the same
+     * way. Must be called before the first search.
+     */
+    public void setReorder(boolean on) {
+        reorder = on;
+    }
+
+    /**
+     * Return the cache of complete trees kept for this graph.
+     */
+    public TreeCache treeCache() {
+        graph();
+        return cache;
     }
 
     /**
      * Driver routine to handle unreachables and print total cost.
-     * It calls recursive routine to print shortest path to
+     * It calls routine to print shortest path to
      * destNode after a shortest path algorithm has run.
      */
     public void printPath(String destName) {
     
-        Vertex w = vertexMap.get(destName);
-        if (w == null) {
+        int w = graph().id(destName);
+        if (w < 0) {
             //System.out.println("In Print Path");
             throw new NoSuchElementException("Destination vertex not found");
             }
-        else if (w.dist == INFINITY)
-            System.out.println(destName + " is unreachable");
+        long begun = SearchMetrics.begin();
+        ResultWriter out = new ResultWriter(System.out, System.err, 1024);
+        if (route != null && route.to == w)
+            printPath(graph, route, out);
+        else if (tree == null)
+            out.println(destName + " is unreachable");
         else {
-            System.out.print("");
-            printPath(w);
-            System.out.println();
+            if (tree.dist(w) > tree.bound) // search stopped short of w
+                tree = fullTree(graph, tree.source);
+            printPath(graph, Route.of(tree, w), out);
         }
+        out.flush();
+        SearchMetrics.phase(SearchMetrics.Phase.PRINT, begun);
+        SearchMetrics.end("printPath", begun);
     }
 
     /**
-     * If vertexName is not present, add it to vertexMap.
-     * In either case, return the Vertex.
+     * Print the vertices of route, or that its end is unreachable.
      */
-    private Vertex getVertex(String vertexName) {
-        Vertex v = vertexMap.get(vertexName);
-        if (v == null) {
-            v = new Vertex(vertexName);
-            vertexMap.put(vertexName, v);
+    private static void printPath(CsrGraph g, Route route, ResultWriter out) {
+        if (!route.reachable()) {
+            out.println(g.name(route.to) + " is unreachable");
+            return;
         }
-        return v;
+        out.path(g, route.vertices);
     }
 
     /**
-     * Recursive routine to print shortest path to dest
-     * after running shortest path algorithm. The path
-     * is known to exist.
+     * Print the cost if several shortest paths tie, else the path.
      */
-    private void printPath(Vertex dest) {
-        if (dest.prev != null) {
-            printPath(dest.prev);
-            System.out.print(" ");
+    private static void printLeg(CsrGraph g, Route route, ResultWriter out) {
+        if (route.paths > 1) {
+            out.println("multiple solutions cost "+Double.valueOf(route.cost).intValue());
+        }
+        else { 
+            printPath(g, route, out);
         }
-        System.out.print(dest.name);
-    }
-
-    /**
-     * Initializes the vertex output info prior to running
-     * any shortest path algorithm.
-     */
-    private void clearAll() {
-        for (Vertex v : vertexMap.values())
-            v.reset();
     }
     
     /**
@@ -170,69 +291,72 @@ public class SimulatorOne {
      * using priority queues based on the binary heap
      */
     public void dijkstra(String startName) {
-        PriorityQueue<Path> pq = new PriorityQueue<Path>();
-       
-
-        Vertex start = vertexMap.get(startName);
-        if (start == null) {
+        CsrGraph g = graph();
+        int start = g.id(startName);
+        if (start < 0) {
             //System.out.println("In Djisktra");
             throw new NoSuchElementException("Start vertex not found");
         }
-        
-        clearAll();
-        pq.add(new Path(start, 0));    
-        start.dist = 0;
-        start.paths = 1;
-
-        int nodesSeen = 0;
-        while (!pq.isEmpty() && nodesSeen < vertexMap.size()) {
-            Path vrec = pq.remove();
-            Vertex v = vrec.dest;
-            if (v.scratch != 0) // already processed v
-                continue;
-
-            v.scratch = 1;
-            nodesSeen++;
-
-            for (Edge e : v.adj) {
-                Vertex w = e.dest;
-                double cvw = e.cost;
-
-                if (cvw < 0)
-                    throw new GraphException("Graph has negative edges");
-
-                if (w.dist > v.dist + cvw) {
-                    w.dist = v.dist + cvw;
-                    w.prev = v;
-                    pq.add(new Path(w, w.dist));
-                    w.paths = v.paths;               
-                }
-                else if (w.dist == v.dist + cvw) {
-                     w.paths += v.paths;
-                }
-            }
-        }
-        
+        long begun = SearchMetrics.begin();
+        route = null;
+        if (cache.fits(1))
+            tree = cache.tree(start, false);
+        else
+            tree = fullTree(g, start);
+        SearchMetrics.phase(SearchMetrics.Phase.SEARCH, begun);
+        SearchMetrics.end("dijkstra", begun);
+    }
+
+    /**
+     * Complete tree of start: on all cores for a graph large enough to
+     * gain (see DeltaStepping), else in this instance's space.
+     */
+    private ShortestPathTree fullTree(CsrGraph g, int start) {
+        if (DeltaStepping.pays(g))
+            return DeltaStepping.tree(g, start, false);
+        return ShortestPaths.dijkstra(g, start, false, space);
     }
     
     
     /**
      * Calculate the distance between two nodes using Dijkstra's algorithm.
+     * A cached tree from the source answers without a search, then a
+     * contraction hierarchy or landmarks if either was built; otherwise
+     * the search stops as soon as the destination is settled.
      * 
      * @param sourceName The name of the source node.
      * @param destName   The name of the destination node.
-     * @return The distance between the source and destination nodes.
+     * @return The number of shortest paths and the distance between
+     *         the source and destination nodes.
      */
     public double[] getDistance(String startName, String destName) {
-        dijkstra(startName); 
+        CsrGraph g = graph();
+        int start = g.id(startName);
+        if (start < 0) {
+            throw new NoSuchElementException("Start vertex not found");
+        }
         double result[] = new double[2];
-        result[0] = vertexMap.get(destName).paths;
-        Vertex dest = vertexMap.get(destName); // Get the destination vertex
-        if (dest == null) {
+        int dest = g.id(destName); // Get the destination vertex
+        if (dest < 0) {
             //System.out.println("In Get Distance");
             throw new NoSuchElementException("Destination vertex not found");
         }
-        result[1] = dest.dist; // Distance from source to destination
+        long begun = SearchMetrics.begin();
+        route = null;
+        tree = cache.peek(start, false);
+        if (tree == null && router != null) {
+            route = router.route(start, dest);
+            result[0] = route.paths;
+            result[1] = route.cost;
+        }
+        else {
+            if (tree == null)
+                tree = ShortestPaths.pointToPoint(g, start, dest, space);
+            result[0] = tree.paths(dest);
+            result[1] = tree.dist(dest); // Distance from source to destination
+        }
+        SearchMetrics.phase(SearchMetrics.Phase.ROUTE, begun);
+        SearchMetrics.end("getDistance", begun);
          
         
         return result;
@@ -240,83 +364,89 @@ public class SimulatorOne {
    
     /**
      * Process a request; return false if end of file.
+     * One search into the client, stopped at the nearest shops with
+     * taxis, and one search out of it, stopped at the nearest shops.
      */
     public static boolean processRequest(String client, SimulatorOne g, List<String> shops) {
+        ResultWriter out = ResultWriter.system();
+        boolean helped = processRequest(client, g, shops, out);
+        out.flush();
+        return helped;
+    }
+
+    /**
+     * Process a request, printing to out; the caller flushes it.
+     */
+    public static boolean processRequest(String client, SimulatorOne g, List<String> shops,
+                                         ResultWriter out) {
+        long begun = SearchMetrics.begin();
         try {
-                   
-            double minFromShop = Double.MAX_VALUE;
-            double minToShop = Double.MAX_VALUE;
-            String startShop = "";
-            String endShop = "";
-            List<String> taxis = new ArrayList<>();
-            List<String> dropOffs = new ArrayList<>();
-            
-            for (String shop: shops) {
-               double distFromShop = g.getDistance(shop, client)[1];
-               double distToShop = g.getDistance(client, shop)[1];
-               if (distFromShop < minFromShop && distFromShop != g.INFINITY) {
-                  minFromShop = distFromShop;
-                  startShop = shop;
-                  
-                  taxis.clear();
-                  taxis.add(shop);
-               }
-               else if (distFromShop == minFromShop && distFromShop != g.INFINITY) {
-                  taxis.add(shop);
-               }
-               
-               if (distToShop < minToShop && distToShop != g.INFINITY) {
-                  minToShop = distToShop;
-                  endShop = shop;
-                  dropOffs.clear();
-                  dropOffs.add(shop);
-               }
-               else if (distToShop == minToShop && distToShop != g.INFINITY) {
-                  dropOffs.add(shop);
-               }
+            DispatchPlanner.Plan plan = g.planner().plan(client, shops, shops);
+            long planned = SearchMetrics.phase(SearchMetrics.Phase.PLAN, begun);
+            List<Route> taxis = plan.pickups;
+            List<Route> dropOffs = plan.dropOffs;
 
-            }
             if (taxis.size() == 0 || dropOffs.size() == 0) {
                throw new NoSuchElementException("Destination vertex not found");
              }
-            System.out.println("client " +client);
+            out.println("client " +client);
             
-            for (String taxi: taxis) {
-               System.out.println("taxi " +taxi);
-               g.dijkstra(taxi);
-               double costs[] = g.getDistance(taxi, client);
-               if (costs[0] > 1) {
-                  System.out.println("multiple solutions cost "+Double.valueOf(costs[1]).intValue());
-               }
-               else { 
-                  g.printPath(client);
-               }
+            for (Route taxi: taxis) {
+               out.println("taxi " +g.graph.name(taxi.from));
+               printLeg(g.graph, taxi, out);
             }
 
             
-            for (String dropOff: dropOffs) {
-               
-               g.dijkstra(client);
-               System.out.println("shop "+dropOff);
-               double costs[] = g.getDistance(client, dropOff);
-               if (costs[0] > 1) {
-                  System.out.println("multiple solutions cost "+Double.valueOf(costs[1]).intValue());
-               }
-               else { 
-                  g.printPath(dropOff);
-               }
+            for (Route dropOff: dropOffs) {
+               out.println("shop "+g.graph.name(dropOff.to));
+               printLeg(g.graph, dropOff, out);
             }
+            SearchMetrics.phase(SearchMetrics.Phase.PRINT, planned);
 
         } catch (NoSuchElementException e) {
-            System.out.println("client " +client);
-            System.err.println("cannot be helped");
+            out.println("client " +client);
+            out.error("cannot be helped");
             return false;
         } catch (GraphException e) {
-            System.err.println(e);
+            out.error(e.toString());
+        } finally {
+            SearchMetrics.end("request", begun);
         }
         return true;
     }
 
+    /**
+     * Turn one line of the event stream into its request: "client c"
+     * is dispatched like a client of the batch input; "shop add v" and
+     * "shop remove v" open and close a shop with taxis; "road v w cost"
+     * sets the cost of the road from v to w and "close v w" closes it.
+     * Only client requests run alongside each other.
+     */
+    static BatchDispatcher.Request event(SimulatorOne g, List<String> shops, String[] words) {
+        CsrGraph graph = g.graph();
+        switch (words[0]) {
+            case "client":
+                RequestStream.expect(words, 2);
+                return out -> processRequest(words[1], g, shops, out);
+            case "shop":
+                RequestStream.expect(words, 3);
+                String shop = RequestStream.vertex(graph, words[2]);
+                if (words[1].equals("add"))
+                    return BatchDispatcher.exclusive(out -> shops.add(shop));
+                if (words[1].equals("remove"))
+                    return BatchDispatcher.exclusive(out -> RequestStream.remove(shops, shop));
+                break;
+            case "road":
+                RequestStream.expect(words, 4);
+                double cost = Double.parseDouble(words[3]);
+                return BatchDispatcher.exclusive(out -> g.updateEdge(words[1], words[2], cost));
+            case "close":
+                RequestStream.expect(words, 3);
+                return BatchDispatcher.exclusive(out -> g.removeEdge(words[1], words[2]));
+        }
+        throw new IllegalArgumentException("unknown event");
+    }
+
     /**
      * A main routine that:
      * 1. Reads a file containing edges (supplied as a command-line parameter);
@@ -325,9 +455,32 @@ public class SimulatorOne {
      * runs the shortest path algorithm.
      * The data file is a sequence of lines of the format
      * source destination cost
+     * With "--threads N", clients are processed on N threads; the
+     * output is the same as the serial run. "--cache-mb N" sets the
+     * tree cache budget (0 turns it off) and "--cache-stats" prints
+     * its counters to stderr at the end. "--precompute" builds
+     * distance tables for the shops and taxis before the first client
+     * and reports their size and build time on stderr, "--ch" answers
+     * requests from a contraction hierarchy built on all cores,
+     * "--landmarks N" answers them by A* with N landmarks instead, and
+     * "--load-stats" reports how fast the graph was read. With
+     * "--graph file" the graph is opened from a snapshot written by
+     * GraphSnapshot and stdin starts at the shop count. With "--serve"
+     * the client section is replaced by a stream of events (see event),
+     * answered as they arrive until stdin ends; "--listen port" takes
+     * the events from connections to port on the loopback address.
+     * Large graphs are renumbered for cache locality as they load;
+     * "--keep-order" keeps ids in the order names first appear.
+     * "--metrics" counts the work and times of every search and
+     * request (see SearchMetrics) and prints a summary to stderr at
+     * the end.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         SimulatorOne g = new SimulatorOne();
+        int threads = intOption(args, "--threads", 1);
+        g.setCacheBytes((long) intOption(args, "--cache-mb", DEFAULT_CACHE_MB) << 20);
+        g.setReorder(!flag(args, "--keep-order"));
+        SearchMetrics.enable(flag(args, "--metrics"));
         int countNodes = 0;
         int countClients = -1;
         int countShops = -1;
@@ -335,38 +488,104 @@ public class SimulatorOne {
         List<String> shops = new ArrayList<>();
         
       
-        Scanner keyboard = new Scanner(System.in);
-       
-        countNodes = Integer.parseInt(keyboard.nextLine());
+        InputReader keyboard = new InputReader(System.in);
+        long loadStart = System.nanoTime();
+        long loaded;
+        String snapshot = option(args, "--graph", null);
+        if (snapshot != null) {
+            g.loadSnapshot(snapshot);
+            loaded = new File(snapshot).length();
+        }
+        else {
+            countNodes = keyboard.readIntLine();
       
-        for (int i = 0; i <countNodes; i++) {
-           String line = keyboard.nextLine();
-           StringTokenizer st = new StringTokenizer(line);
-         
-           String source = st.nextToken();                
-           while (st.hasMoreTokens()) {
-              String dest = st.nextToken();
-              int cost = Integer.parseInt(st.nextToken());
-              g.addEdge(source, dest, cost);
-           }
+            g.readEdges(keyboard, countNodes);
+            loaded = keyboard.bytesRead();
         }
+        CsrGraph graph = g.graph();
+        if (flag(args, "--load-stats"))
+            System.err.println(GraphLoader.report(graph, loaded, System.nanoTime() - loadStart));
 
-        countShops = Integer.parseInt(keyboard.nextLine());
+        countShops = keyboard.readIntLine();
         shops = new ArrayList<>(countShops);
-        StringTokenizer st = new StringTokenizer(keyboard.nextLine());
-        while (st.hasMoreTokens()) {
-           shops.add(st.nextToken());
+        keyboard.nextLine();
+        while (keyboard.hasMoreTokens()) {
+           shops.add(keyboard.nextToken());
         }   
-        countClients = Integer.parseInt(keyboard.nextLine());
-        clients = new ArrayList<>(countClients);               
-        st = new StringTokenizer(keyboard.nextLine());            
-        while (st.hasMoreTokens()) {
-           clients.add(st.nextToken());
+        boolean streaming = flag(args, "--serve") || intOption(args, "--listen", 0) > 0;
+        if (!streaming) {
+            countClients = keyboard.readIntLine();
+            clients = new ArrayList<>(countClients);               
+            keyboard.nextLine();            
+            while (keyboard.hasMoreTokens()) {
+               clients.add(keyboard.nextToken());
+            }
         }
-        keyboard.close();         
 
-        for (String client: clients) {
-            processRequest(client, g,shops);
+        if (flag(args, "--ch"))
+            System.err.println(g.contract(Runtime.getRuntime().availableProcessors()));
+        else if (intOption(args, "--landmarks", 0) > 0)
+            System.err.println(g.landmarks(intOption(args, "--landmarks", 0),
+                    Runtime.getRuntime().availableProcessors()));
+        if (flag(args, "--precompute"))
+            System.err.println(g.precompute(shops, shops, threads));
+
+        ResultWriter results = ResultWriter.system();
+        if (streaming) {
+            final List<String> liveShops = shops;
+            RequestStream stream = new RequestStream(words -> event(g, liveShops, words), threads);
+            if (intOption(args, "--listen", 0) > 0)
+                stream.listen(intOption(args, "--listen", 0));
+            else
+                stream.serve(keyboard, results);
         }
+        else if (threads > 1) {
+            g.graph();
+            List<BatchDispatcher.Request> batch = new ArrayList<>(clients.size());
+            for (String client: clients) {
+                final List<String> finalShops = shops;
+                batch.add(out -> processRequest(client, g, finalShops, out));
+            }
+            new BatchDispatcher(threads).run(batch, results);
+        }
+        else {
+            for (String client: clients) {
+                processRequest(client, g,shops, results);
+            }
+            results.flush();
+        }
+        if (flag(args, "--cache-stats"))
+            System.err.println(g.treeCache().stats());
+        if (SearchMetrics.enabled())
+            System.err.println(SearchMetrics.summary());
+    }
+
+    /**
+     * Value of the command-line option "name N", or otherwise.
+     */
+    static int intOption(String[] args, String name, int otherwise) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return Integer.parseInt(args[i + 1]);
+        }
+        return otherwise;
+    }
+
+    /**
+     * Value of the command-line option "name value", or otherwise.
+     */
+    static String option(String[] args, String name, String otherwise) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return args[i + 1];
+        }
+        return otherwise;
+    }
+
+    /**
+     * Whether the command-line flag name is present.
+     */
+    static boolean flag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Bounded LRU cache of complete shortest-path trees, keyed by source
+// vertex and direction.
+//
+// Shops and taxi stands are a small, fixed set of sources, so their
+// trees are searched once and then answer every later request from
+// them without any search. Each tree is charged its snapshot size
+// (distance, predecessor and path-count arrays) against a byte budget,
+// and the least recently used trees are dropped to stay within it.
+// Trees of large graphs are searched on all cores (DeltaStepping).
+// All operations are safe to call from several threads; searches run
+// outside the lock, so two threads missing on one source may both
+// search it.
+//
+// ******************PUBLIC OPERATIONS**********************
+// ShortestPathTree tree( int s, boolean reverse )
+//                            --> Cached tree, searching on a miss
+// ShortestPathTree peek( int s, boolean reverse )
+//                            --> Cached tree or null, never searches
+// boolean fits( int trees )  --> Whether that many trees fit at once
+// void invalidate( CsrGraph g )
+//                            --> Drop every tree; g replaces the graph
+// int repair( int u, int w, double old )
+//                            --> Repair every tree after the cost of
+//                                u -> w changed from old
+// String stats( )            --> Hit/miss/eviction counters and size
+class TreeCache {
+    private CsrGraph graph;
+    private final long maxBytes;
+    private final LinkedHashMap<Long, ShortestPathTree> trees =
+            new LinkedHashMap<Long, ShortestPathTree>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long repairs = 0;
+    private long recounted = 0;
+
+    public TreeCache(CsrGraph graph, long maxBytes) {
+        this.graph = graph;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Return the complete tree rooted at source, searching and caching
+     * it if it is not cached yet.
+     */
+    public ShortestPathTree tree(int source, boolean reverse) {
+        ShortestPathTree tree = peek(source, reverse);
+        if (tree != null)
+            return tree;
+        CsrGraph g;
+        synchronized (this) {
+            g = graph;
+        }
+        tree = DeltaStepping.tree(g, source, reverse);
+        put(tree);
+        return tree;
+    }
+
+    /**
+     * Return the cached tree rooted at source, or null.
+     */
+    public synchronized ShortestPathTree peek(int source, boolean reverse) {
+        ShortestPathTree tree = trees.get(key(source, reverse));
+        if (tree != null)
+            hits++;
+        else
+            misses++;
+        return tree;
+    }
+
+    /**
+     * Whether the given number of trees can be cached at the same time.
+     */
+    public synchronized boolean fits(int count) {
+        return count * ShortestPathTree.snapshotBytes(graph.vertexCount()) <= maxBytes;
+    }
+
+    /**
+     * Drop every cached tree because the graph changed to g.
+     */
+    public synchronized void invalidate(CsrGraph g) {
+        graph = g;
+        trees.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Repair every cached tree in place after the cost of the edges
+     * from u to w of the current graph changed from old, rather than
+     * dropping them. Trees handed out before stay the same objects and
+     * see the repair, so this must not run while requests read them.
+     * Returns the number of vertices recounted.
+     */
+    public synchronized int repair(int u, int w, double old) {
+        int count = 0;
+        for (ShortestPathTree tree : trees.values())
+            count += tree.repair(u, w, old);
+        repairs++;
+        recounted += count;
+        return count;
+    }
+
+    private synchronized void put(ShortestPathTree tree) {
+        if (tree.graph != graph)    // graph changed while searching
+            return;
+        long size = ShortestPathTree.snapshotBytes(graph.vertexCount());
+        if (size > maxBytes)
+            return;
+        if (trees.put(key(tree.source, tree.reverse), tree) == null)
+            bytes += size;
+        Iterator<Map.Entry<Long, ShortestPathTree>> it = trees.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            it.next();
+            it.remove();
+            bytes -= size;
+            evictions++;
+        }
+    }
+
+    private static Long key(int source, boolean reverse) {
+        return 2L * source + (reverse ? 1 : 0);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized String stats() {
+        return "tree cache: " + hits + " hits, " + misses + " misses, " + evictions
+                + " evictions, " + repairs + " repairs (" + recounted + " vertices recounted), "
+                + trees.size() + " trees, " + bytes + " bytes of " + maxBytes;
+    }
+}
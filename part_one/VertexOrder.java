@@ -0,0 +1,167 @@
+import java.util.Arrays;
+
+// Renumbers the vertices of a CsrGraph so that the two ends of a road
+// mostly get nearby ids, and a search touching a neighbourhood reads
+// a few runs of each array instead of cache lines all over them.
+//
+// Ids otherwise follow the order names first appear in the input,
+// which for exported or randomly placed data has nothing to do with
+// where vertices are. The order is reverse Cuthill-McKee, on roads
+// taken as two-way: a breadth-first search from a far-out vertex of
+// each component, neighbours in order of degree, reversed. Names move
+// with their vertices and each vertex keeps its edges in their order,
+// so everything printed by name is unchanged. The input has no
+// coordinates, so a space-filling curve is not an option. Input that
+// is already local (a city numbered row by row) keeps its order.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static CsrGraph local( CsrGraph g ) --> g renumbered if it is large
+//                                        and scattered enough to gain,
+//                                        else g
+// static int[] cuthillMcKee( CsrGraph g ) --> New id of each vertex
+// static CsrGraph renumber( CsrGraph g, int[] id )
+//                                     --> g with vertex v as id[v]
+class VertexOrder {
+    public static final int MIN_VERTICES = 1 << 16;    // Smaller graphs sit in cache anyway
+
+    private VertexOrder() {
+    }
+
+    public static CsrGraph local(CsrGraph g) {
+        if (g.vertexCount() < MIN_VERTICES)
+            return g;
+        int[] id = cuthillMcKee(g);
+        if (2 * span(g, id) > span(g, null))
+            return g;
+        return renumber(g, id);
+    }
+
+    /**
+     * Mean difference between the ids of an edge's ends, numbered by
+     * id (by the current ids if null).
+     */
+    static long span(CsrGraph g, int[] id) {
+        long total = 0;
+        for (int v = 0; v < g.vertexCount(); v++) {
+            int from = id == null ? v : id[v];
+            for (int e = g.offsets[v]; e < g.offsets[v + 1]; e++)
+                total += Math.abs(from - (id == null ? g.targets[e] : id[g.targets[e]]));
+        }
+        return g.edgeCount() == 0 ? 0 : total / g.edgeCount();
+    }
+
+    /**
+     * New id of each vertex in reverse Cuthill-McKee order.
+     */
+    public static int[] cuthillMcKee(CsrGraph g) {
+        int n = g.vertexCount();
+        int[] degree = new int[n];
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            degree[v] = g.offsets[v + 1] - g.offsets[v] + g.inOffsets[v + 1] - g.inOffsets[v];
+            maxDegree = Math.max(maxDegree, degree[v]);
+        }
+        int[] order = new int[n];       // Old ids in Cuthill-McKee order, also the queue
+        int[] seen = new int[n];        // Root + 1 of the search that last reached v
+        int[] queue = new int[n];
+        boolean[] placed = new boolean[n];
+        long[] next = new long[maxDegree];  // Degree << 32 | id of one vertex's new neighbours
+        int filled = 0;
+        for (int root = 0; root < n; root++) {
+            if (placed[root])
+                continue;
+            int start = farthest(g, root, seen, queue);
+            placed[start] = true;
+            order[filled++] = start;
+            for (int head = filled - 1; head < filled; head++) {
+                int u = order[head];
+                int k = 0;
+                for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++)
+                    k = add(g.targets[e], degree, placed, next, k);
+                for (int e = g.inOffsets[u]; e < g.inOffsets[u + 1]; e++)
+                    k = add(g.sources[e], degree, placed, next, k);
+                Arrays.sort(next, 0, k);
+                for (int i = 0; i < k; i++)
+                    order[filled++] = (int) next[i];
+            }
+        }
+        int[] id = new int[n];
+        for (int i = 0; i < n; i++)
+            id[order[i]] = n - 1 - i;
+        return id;
+    }
+
+    private static int add(int w, int[] degree, boolean[] placed, long[] next, int k) {
+        if (placed[w])
+            return k;
+        placed[w] = true;
+        next[k] = (long) degree[w] << 32 | w;
+        return k + 1;
+    }
+
+    /**
+     * The last vertex a breadth-first search from root reaches: one
+     * of the farthest from it in roads, a good start for the order.
+     */
+    private static int farthest(CsrGraph g, int root, int[] seen, int[] queue) {
+        int mark = root + 1;
+        int size = 0;
+        seen[root] = mark;
+        queue[size++] = root;
+        for (int head = 0; head < size; head++) {
+            int u = queue[head];
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int w = g.targets[e];
+                if (seen[w] != mark) {
+                    seen[w] = mark;
+                    queue[size++] = w;
+                }
+            }
+            for (int e = g.inOffsets[u]; e < g.inOffsets[u + 1]; e++) {
+                int w = g.sources[e];
+                if (seen[w] != mark) {
+                    seen[w] = mark;
+                    queue[size++] = w;
+                }
+            }
+        }
+        return queue[size - 1];
+    }
+
+    /**
+     * A copy of g with vertex v numbered id[v], its name and its edges
+     * (in their order) going with it.
+     */
+    public static CsrGraph renumber(CsrGraph g, int[] id) {
+        int n = g.vertexCount();
+        int[] old = new int[n];
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            old[id[v]] = v;
+            names[id[v]] = g.name(v);
+        }
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[g.edgeCount()];
+        double[] weights = new double[g.edgeCount()];
+        permute(g.offsets, g.targets, g.weights, id, old, offsets, targets, weights);
+        int[] inOffsets = new int[n + 1];
+        int[] sources = new int[g.edgeCount()];
+        double[] inWeights = new double[g.edgeCount()];
+        permute(g.inOffsets, g.sources, g.inWeights, id, old, inOffsets, sources, inWeights);
+        return CsrGraph.of(names, offsets, targets, weights, inOffsets, sources, inWeights);
+    }
+
+    private static void permute(int[] offsets, int[] ends, double[] weights, int[] id, int[] old,
+                                int[] newOffsets, int[] newEnds, double[] newWeights) {
+        int e = 0;
+        for (int i = 0; i < old.length; i++) {
+            int v = old[i];
+            newOffsets[i] = e;
+            for (int f = offsets[v]; f < offsets[v + 1]; f++, e++) {
+                newEnds[e] = id[ends[f]];
+                newWeights[e] = weights[f];
+            }
+        }
+        newOffsets[old.length] = e;
+    }
+}
@@ -0,0 +1,628 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+// Contraction Hierarchies over a CsrGraph: vertices are ranked and
+// contracted lowest first, and contracting v adds a shortcut u -> w for
+// every path u -> v -> w that may be a shortest path. A query then only
+// searches upwards in rank from both ends and meets at the top, which
+// on road networks settles a few hundred vertices instead of a large
+// part of the map.
+//
+// Path counts are kept exact. Every edge of the hierarchy carries the
+// number of equal-cost paths it stands for, a shortcut is only left out
+// when a witness path is strictly cheaper, and each shortest path of
+// the graph then maps to exactly one up-down path, counted at its
+// highest vertex. That argument needs positive costs: with zero-cost
+// edges countsPaths() is false and callers keep using Dijkstra.
+//
+// Preprocessing runs in rounds. Each round picks the vertices whose
+// priority (shortcuts added minus edges removed, plus neighbours
+// already contracted) is lowest among their neighbours; that set has no
+// edges inside it, so its shortcuts are searched in parallel, with
+// witness paths through other members of the set ignored.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static ContractionHierarchy build( CsrGraph g, int threads )
+//                            --> Rank g and add shortcuts
+// Route route( int s, int t ) --> Cost, path count and route s to t
+// boolean countsPaths( )     --> Whether route's path counts are exact
+// String stats( )            --> Shortcuts and preprocessing time
+class ContractionHierarchy implements Router {
+    private static final int SIMULATE_SETTLE_LIMIT = 20;    // Witness searches for priorities
+    private static final int CONTRACT_SETTLE_LIMIT = 100;   // and for actual shortcuts
+
+    final CsrGraph graph;
+    final int[] rank;
+    // Edges to higher-ranked vertices, grouped by their lower end: out of
+    // v for the forward search, into v for the backward search
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final double[] upWeights;
+    private final int[] upPaths;
+    private final int[] upMiddles;  // Contracted vertex a shortcut skips, -1 for a road
+    private final int[] downOffsets;
+    private final int[] downSources;
+    private final double[] downWeights;
+    private final int[] downPaths;
+    private final int[] downMiddles;
+    private final int shortcuts;
+    private final long buildNanos;
+
+    private ContractionHierarchy(CsrGraph graph, Contractor c, long buildNanos) {
+        this.graph = graph;
+        this.rank = c.rank;
+        this.shortcuts = c.shortcuts;
+        this.buildNanos = buildNanos;
+        int n = graph.vertexCount();
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] = upOffsets[v] + c.out[v].size;
+            downOffsets[v + 1] = downOffsets[v] + c.in[v].size;
+        }
+        upTargets = new int[upOffsets[n]];
+        upWeights = new double[upOffsets[n]];
+        upPaths = new int[upOffsets[n]];
+        upMiddles = new int[upOffsets[n]];
+        downSources = new int[downOffsets[n]];
+        downWeights = new double[downOffsets[n]];
+        downPaths = new int[downOffsets[n]];
+        downMiddles = new int[downOffsets[n]];
+        for (int v = 0; v < n; v++) {
+            c.out[v].copyTo(upOffsets[v], upTargets, upWeights, upPaths, upMiddles);
+            c.in[v].copyTo(downOffsets[v], downSources, downWeights, downPaths, downMiddles);
+        }
+    }
+
+    /**
+     * Contract every vertex of g, searching witnesses on threads
+     * worker threads.
+     */
+    public static ContractionHierarchy build(CsrGraph g, int threads) {
+        if (g.minWeight < 0)
+            throw new GraphException("Graph has negative edges");
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            Contractor c = new Contractor(g, pool, Math.max(1, threads));
+            c.contractAll();
+            return new ContractionHierarchy(g, c, System.nanoTime() - start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public boolean countsPaths() {
+        return graph.minWeight > 0 || graph.edgeCount() == 0;
+    }
+
+    /**
+     * Cost, number of shortest paths and one shortest path from s to t.
+     */
+    @Override
+    public Route route(int s, int t) {
+        return route(s, t, SearchSpace.local(graph, 0), SearchSpace.local(graph, 1));
+    }
+
+    Route route(int s, int t, SearchSpace fwd, SearchSpace bwd) {
+        if (s == t)
+            return new Route(s, t, 0, 1, new int[] {s});
+        start(fwd, s);
+        start(bwd, t);
+        double best = ShortestPaths.INFINITY;
+        while (true) {
+            double topF = fwd.heap.isEmpty() ? ShortestPaths.INFINITY : fwd.heap.peekKey();
+            double topB = bwd.heap.isEmpty() ? ShortestPaths.INFINITY : bwd.heap.peekKey();
+            boolean fwdDone = topF == ShortestPaths.INFINITY || topF > best;
+            boolean bwdDone = topB == ShortestPaths.INFINITY || topB > best;
+            if (fwdDone && bwdDone)
+                break;
+            if (!fwdDone && (bwdDone || topF <= topB))
+                best = settleNext(fwd, bwd, true, best);
+            else
+                best = settleNext(bwd, fwd, false, best);
+        }
+
+        // Every shortest path peaks at exactly one vertex settled by both
+        double cost = ShortestPaths.INFINITY;
+        int paths = 0;
+        int peak = -1;
+        for (int i = 0; i < fwd.settledCount; i++) {
+            int x = fwd.order[i];
+            if (!bwd.marked(x))
+                continue;
+            double total = fwd.dist[x] + bwd.dist[x];
+            if (total < cost) {
+                cost = total;
+                paths = 0;
+                peak = x;
+            }
+            if (total == cost)
+                paths = ShortestPaths.addPaths(paths, ShortestPaths.mulPaths(fwd.paths[x], bwd.paths[x]));
+        }
+        if (peak < 0)
+            return new Route(s, t, ShortestPaths.INFINITY, 0, null);
+        return new Route(s, t, cost, paths, unpack(peak, fwd, bwd));
+    }
+
+    private static void start(SearchSpace space, int v) {
+        space.reset();
+        space.touch(v);
+        space.dist[v] = 0;
+        space.paths[v] = 1;
+        space.heap.add(v);
+    }
+
+    /**
+     * Settle the next vertex of one upward search and return the best
+     * meeting cost seen so far. A vertex reached more cheaply through a
+     * higher neighbour (stall-on-demand) cannot be on a shortest up-down
+     * path, so its edges are not relaxed and it is never a peak.
+     */
+    private double settleNext(SearchSpace space, SearchSpace other, boolean forward, double best) {
+        int[] offsets = forward ? upOffsets : downOffsets;
+        int[] ends = forward ? upTargets : downSources;
+        double[] weights = forward ? upWeights : downWeights;
+        int[] counts = forward ? upPaths : downPaths;
+        int v = space.heap.poll();
+        double dv = space.dist[v];
+        double rest = other.dist(v);
+        if (rest != ShortestPaths.INFINITY)
+            best = Math.min(best, dv + rest);
+        if (stalled(space, v, forward))
+            return best;
+        space.mark(v);
+        space.order[space.settledCount++] = v;
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            int w = ends[e];
+            double dw = dv + weights[e];
+            int pw = ShortestPaths.mulPaths(space.paths[v], counts[e]);
+            space.touch(w);
+            if (space.dist[w] > dw) {
+                space.dist[w] = dw;
+                space.prev[w] = v;
+                space.paths[w] = pw;
+                if (space.heap.contains(w))
+                    space.heap.decreased(w);
+                else
+                    space.heap.add(w);
+            }
+            else if (space.dist[w] == dw) {
+                space.paths[w] = ShortestPaths.addPaths(space.paths[w], pw);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Whether some higher neighbour w already gives v a strictly smaller
+     * cost than v has, over the edge w -> v (forward) or v -> w.
+     */
+    private boolean stalled(SearchSpace space, int v, boolean forward) {
+        int[] offsets = forward ? downOffsets : upOffsets;
+        int[] ends = forward ? downSources : upTargets;
+        double[] weights = forward ? downWeights : upWeights;
+        double dv = space.dist[v];
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            double dw = space.dist(ends[e]);
+            if (dw != ShortestPaths.INFINITY && dw + weights[e] < dv)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The graph vertices of the up-down path through peak, with every
+     * shortcut replaced by the two edges it skips.
+     */
+    private int[] unpack(int peak, SearchSpace fwd, SearchSpace bwd) {
+        IntStack coarse = new IntStack();
+        for (int v = peak; v != -1; v = fwd.prev(v))
+            coarse.push(v);
+        coarse.reverse();
+        for (int v = bwd.prev(peak); v != -1; v = bwd.prev(v))
+            coarse.push(v);
+
+        IntStack path = new IntStack();
+        IntStack pending = new IntStack();     // Edges still to expand, as (from, to) pairs
+        path.push(coarse.get(0));
+        for (int i = 0; i + 1 < coarse.size; i++) {
+            pending.push(coarse.get(i + 1));
+            pending.push(coarse.get(i));
+            while (pending.size > 0) {
+                int u = pending.pop();
+                int w = pending.pop();
+                int middle = middle(u, w);
+                if (middle < 0) {
+                    path.push(w);
+                }
+                else {
+                    pending.push(w);
+                    pending.push(middle);
+                    pending.push(middle);
+                    pending.push(u);
+                }
+            }
+        }
+        return path.toArray();
+    }
+
+    /**
+     * The vertex skipped by the hierarchy edge u -> w, -1 if it is a
+     * road of the graph.
+     */
+    private int middle(int u, int w) {
+        if (rank[w] > rank[u]) {
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                if (upTargets[e] == w)
+                    return upMiddles[e];
+            }
+        }
+        else {
+            for (int e = downOffsets[w]; e < downOffsets[w + 1]; e++) {
+                if (downSources[e] == u)
+                    return downMiddles[e];
+            }
+        }
+        throw new IllegalStateException("No hierarchy edge " + u + " -> " + w);
+    }
+
+    @Override
+    public String stats() {
+        return "contraction hierarchy: " + graph.vertexCount() + " vertices, " + graph.edgeCount()
+                + " edges, " + shortcuts + " shortcuts, built in " + buildNanos / 1000000 + " ms";
+    }
+
+    // The graph being contracted: adjacency lists that gain shortcuts
+    // and lose contracted vertices, plus the contraction order.
+    private static class Contractor {
+        final int n;
+        final Edges[] out;
+        final Edges[] in;
+        final int[] rank;
+        final boolean[] contracted;
+        final boolean[] inRound;        // Being contracted this round
+        final int[] priority;
+        final int[] deleted;            // Neighbours contracted so far
+        final ExecutorService pool;
+        final int threads;
+        int shortcuts = 0;
+
+        Contractor(CsrGraph g, ExecutorService pool, int threads) {
+            n = g.vertexCount();
+            this.pool = pool;
+            this.threads = threads;
+            out = new Edges[n];
+            in = new Edges[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new Edges();
+                in[v] = new Edges();
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = g.offsets[v]; e < g.offsets[v + 1]; e++) {
+                    int w = g.targets[e];
+                    if (w == v)     // A loop is never part of a shortest path
+                        continue;
+                    out[v].merge(w, g.weights[e], 1, -1);
+                    in[w].merge(v, g.weights[e], 1, -1);
+                }
+            }
+            rank = new int[n];
+            contracted = new boolean[n];
+            inRound = new boolean[n];
+            priority = new int[n];
+            deleted = new int[n];
+        }
+
+        void contractAll() {
+            int[] all = new int[n];
+            for (int v = 0; v < n; v++)
+                all[v] = v;
+            parallel(all, all.length, v -> priority[v] = priority(v));
+
+            int next = 0;
+            int[] round = new int[n];
+            int[] touched = new int[n];
+            boolean[] seen = new boolean[n];
+            List<List<Shortcut>> found = new ArrayList<List<Shortcut>>();
+            while (next < n) {
+                int size = 0;
+                for (int v = 0; v < n; v++) {
+                    if (!contracted[v] && lowestAround(v))
+                        round[size++] = v;
+                }
+                for (int i = 0; i < size; i++)
+                    inRound[round[i]] = true;
+
+                found.clear();
+                for (int i = 0; i < size; i++)
+                    found.add(null);
+                parallelIndexed(size, i -> found.set(i, shortcutsOf(round[i], true)));
+
+                int touchedCount = 0;
+                for (int i = 0; i < size; i++) {
+                    int v = round[i];
+                    rank[v] = next++;
+                    contracted[v] = true;
+                    inRound[v] = false;
+                    for (Shortcut s : found.get(i)) {
+                        if (out[s.from].merge(s.to, s.cost, s.paths, v))
+                            shortcuts++;
+                        in[s.to].merge(s.from, s.cost, s.paths, v);
+                    }
+                    for (int k = 0; k < in[v].size; k++) {
+                        int u = in[v].ends[k];
+                        out[u].remove(v);
+                        deleted[u]++;
+                        if (!seen[u]) {
+                            seen[u] = true;
+                            touched[touchedCount++] = u;
+                        }
+                    }
+                    for (int k = 0; k < out[v].size; k++) {
+                        int w = out[v].ends[k];
+                        in[w].remove(v);
+                        deleted[w]++;
+                        if (!seen[w]) {
+                            seen[w] = true;
+                            touched[touchedCount++] = w;
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++)
+                    seen[touched[i]] = false;
+                parallel(touched, touchedCount, v -> priority[v] = priority(v));
+            }
+        }
+
+        /**
+         * Whether v goes before every uncontracted neighbour.
+         */
+        private boolean lowestAround(int v) {
+            for (int k = 0; k < out[v].size; k++) {
+                if (before(out[v].ends[k], v))
+                    return false;
+            }
+            for (int k = 0; k < in[v].size; k++) {
+                if (before(in[v].ends[k], v))
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean before(int u, int v) {
+            if (priority[u] != priority[v])
+                return priority[u] < priority[v];
+            return Integer.compareUnsigned(scramble(u), scramble(v)) < 0;
+        }
+
+        // Breaks priority ties in no particular spatial order
+        private static int scramble(int v) {
+            int h = v * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private int priority(int v) {
+            int added = shortcutsOf(v, false).size();
+            return 2 * (added - out[v].size - in[v].size) + deleted[v];
+        }
+
+        /**
+         * The shortcuts contracting v would need. During a round, paths
+         * through the round's other vertices do not count as witnesses.
+         */
+        private List<Shortcut> shortcutsOf(int v, boolean round) {
+            List<Shortcut> result = new ArrayList<Shortcut>();
+            Edges ins = in[v];
+            Edges outs = out[v];
+            if (ins.size == 0 || outs.size == 0)
+                return result;
+            SearchSpace space = SearchSpace.local(n, 0);
+            for (int i = 0; i < ins.size; i++) {
+                int u = ins.ends[i];
+                double limit = 0;
+                for (int j = 0; j < outs.size; j++) {
+                    if (outs.ends[j] != u)
+                        limit = Math.max(limit, ins.costs[i] + outs.costs[j]);
+                }
+                witnessSearch(u, v, limit, round, space);
+                for (int j = 0; j < outs.size; j++) {
+                    int w = outs.ends[j];
+                    double cost = ins.costs[i] + outs.costs[j];
+                    if (w == u || space.dist(w) < cost)
+                        continue;
+                    result.add(new Shortcut(u, w, cost, ShortestPaths.mulPaths(ins.paths[i], outs.paths[j])));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Dijkstra from u over the uncontracted graph without skip, up
+         * to cost limit or a fixed number of settled vertices.
+         */
+        private void witnessSearch(int u, int skip, double limit, boolean round, SearchSpace space) {
+            space.reset();
+            space.touch(u);
+            space.dist[u] = 0;
+            space.heap.add(u);
+            int settled = 0;
+            while (!space.heap.isEmpty() && space.heap.peekKey() <= limit
+                    && settled++ < (round ? CONTRACT_SETTLE_LIMIT : SIMULATE_SETTLE_LIMIT)) {
+                int x = space.heap.poll();
+                double dx = space.dist[x];
+                Edges edges = out[x];
+                for (int k = 0; k < edges.size; k++) {
+                    int y = edges.ends[k];
+                    if (y == skip || (round && inRound[y]))
+                        continue;
+                    double dy = dx + edges.costs[k];
+                    space.touch(y);
+                    if (dy < space.dist[y]) {
+                        space.dist[y] = dy;
+                        if (space.heap.contains(y))
+                            space.heap.decreased(y);
+                        else
+                            space.heap.add(y);
+                    }
+                }
+            }
+        }
+
+        private void parallel(int[] vertices, int count, IntConsumer task) {
+            parallelIndexed(count, i -> task.accept(vertices[i]));
+        }
+
+        /**
+         * Run task for 0..count-1 on the pool, in contiguous chunks.
+         */
+        private void parallelIndexed(int count, IntConsumer task) {
+            if (count == 0)
+                return;
+            if (threads == 1 || count < 64) {
+                for (int i = 0; i < count; i++)
+                    task.accept(i);
+                return;
+            }
+            int chunks = Math.min(count, threads * 4);
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+            for (int c = 0; c < chunks; c++) {
+                int from = (int) ((long) count * c / chunks);
+                int to = (int) ((long) count * (c + 1) / chunks);
+                tasks.add(() -> {
+                    for (int i = from; i < to; i++)
+                        task.accept(i);
+                    return null;
+                });
+            }
+            try {
+                for (Future<Void> done : pool.invokeAll(tasks))
+                    done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while contracting", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // A shortcut found while contracting a vertex.
+    private static class Shortcut {
+        final int from;
+        final int to;
+        final double cost;
+        final int paths;
+
+        Shortcut(int from, int to, double cost, int paths) {
+            this.from = from;
+            this.to = to;
+            this.cost = cost;
+            this.paths = paths;
+        }
+    }
+
+    // Growable adjacency list of one vertex; at most one edge per end,
+    // holding the cheapest cost and the number of paths at that cost.
+    private static class Edges {
+        int[] ends = new int[4];
+        double[] costs = new double[4];
+        int[] paths = new int[4];
+        int[] middles = new int[4];
+        int size = 0;
+
+        /**
+         * Add an edge to end, or fold it into the existing one. Returns
+         * true if a new edge was added.
+         */
+        boolean merge(int end, double cost, int count, int middle) {
+            for (int k = 0; k < size; k++) {
+                if (ends[k] != end)
+                    continue;
+                if (cost < costs[k]) {
+                    costs[k] = cost;
+                    paths[k] = count;
+                    middles[k] = middle;
+                }
+                else if (cost == costs[k]) {
+                    paths[k] = ShortestPaths.addPaths(paths[k], count);
+                }
+                return false;
+            }
+            if (size == ends.length) {
+                ends = Arrays.copyOf(ends, size * 2);
+                costs = Arrays.copyOf(costs, size * 2);
+                paths = Arrays.copyOf(paths, size * 2);
+                middles = Arrays.copyOf(middles, size * 2);
+            }
+            ends[size] = end;
+            costs[size] = cost;
+            paths[size] = count;
+            middles[size] = middle;
+            size++;
+            return true;
+        }
+
+        void remove(int end) {
+            for (int k = 0; k < size; k++) {
+                if (ends[k] == end) {
+                    size--;
+                    ends[k] = ends[size];
+                    costs[k] = costs[size];
+                    paths[k] = paths[size];
+                    middles[k] = middles[size];
+                    return;
+                }
+            }
+        }
+
+        void copyTo(int at, int[] e, double[] c, int[] p, int[] m) {
+            System.arraycopy(ends, 0, e, at, size);
+            System.arraycopy(costs, 0, c, at, size);
+            System.arraycopy(paths, 0, p, at, size);
+            System.arraycopy(middles, 0, m, at, size);
+        }
+    }
+
+    // Minimal growable int list for path unpacking.
+    private static class IntStack {
+        int[] items = new int[16];
+        int size = 0;
+
+        void push(int v) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = v;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        int get(int i) {
+            return items[i];
+        }
+
+        void reverse() {
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int t = items[i];
+                items[i] = items[j];
+                items[j] = t;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(items, size);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+// Road network in compressed-sparse-row form.
+//
+// Vertex names are interned to dense int ids 0..n-1 once, while the
+// graph is being built, and looked up through Names: a String table
+// and HashMap for a built graph, the mapped file for a snapshot (see
+// GraphSnapshot). The out-edges of vertex v are the slots
+// offsets[v] .. offsets[v+1]-1 of targets/weights, in the order the
+// edges were added, so one edge costs 12 bytes (int target, double weight).
+// The same edges are also kept grouped by destination (inOffsets,
+// sources, inWeights), another 12 bytes, so searches can run over
+// reversed edges.
+//
+// The vertices and edges are fixed once built. Only edge costs can
+// change, through setWeight, which writes both copies of the cost in
+// place and must not run while any search is reading the graph. A
+// removed edge keeps its slots with cost NO_EDGE, which no search ever
+// relaxes.
+//
+// When every cost is a whole number up to MAX_INTEGRAL, integral is
+// set and searches order their frontier with a RadixHeap on the
+// integer costs instead of comparing doubles; sums of such costs stay
+// exact in a double, so equal-cost paths are still counted exactly.
+//
+// ******************PUBLIC OPERATIONS**********************
+// int id( String name )      --> Dense id of name, or -1
+// String name( int v )       --> Name of vertex v
+// int vertexCount( )         --> Number of vertices
+// int edgeCount( )           --> Number of edges
+// double setWeight( int v, int w, double c )
+//                            --> Set the cost of every edge v -> w to c,
+//                                return the cheapest old cost
+// Builder.addEdge( String v, String w, double cvw )
+//                            --> Add an edge while loading
+// Builder.build( )           --> Freeze into a CsrGraph
+// new Builder( CsrGraph g )  --> Reopen g for more edges
+class CsrGraph {
+    public static final double NO_EDGE = Double.POSITIVE_INFINITY; // Cost of a removed edge
+    public static final double MAX_INTEGRAL = Integer.MAX_VALUE;    // Largest cost bucketed as an integer
+
+    private final Names names;  // Vertex name by id and id by name
+    final int[] offsets;        // Out-edges of v start at offsets[v]
+    final int[] targets;        // Edge destination ids
+    final double[] weights;     // Edge costs
+    final int[] inOffsets;      // In-edges of v start at inOffsets[v]
+    final int[] sources;        // Edge source ids, grouped by destination
+    final double[] inWeights;   // Edge costs, grouped by destination
+    double minWeight;           // Never above the smallest edge cost
+    boolean integral;           // Every cost a whole number up to MAX_INTEGRAL
+
+    /**
+     * Wrap finished CSR arrays, as written by Builder.build or
+     * VertexOrder, and index the names.
+     */
+    static CsrGraph of(String[] names, int[] offsets, int[] targets, double[] weights,
+                       int[] inOffsets, int[] sources, double[] inWeights) {
+        double min = weights.length == 0 ? 0 : Double.POSITIVE_INFINITY;
+        for (double w : weights)
+            min = Math.min(min, w);
+        return new CsrGraph(new NameTable(names), offsets, targets, weights, inOffsets, sources, inWeights,
+                min, integral(weights));
+    }
+
+    /**
+     * Wrap finished CSR arrays whose names are already indexed and
+     * whose smallest cost and integrality are known, as a snapshot
+     * records them.
+     */
+    static CsrGraph of(Names names, int[] offsets, int[] targets, double[] weights,
+                       int[] inOffsets, int[] sources, double[] inWeights,
+                       double minWeight, boolean integral) {
+        return new CsrGraph(names, offsets, targets, weights, inOffsets, sources, inWeights,
+                minWeight, integral);
+    }
+
+    private CsrGraph(Names names, int[] offsets, int[] targets, double[] weights,
+                     int[] inOffsets, int[] sources, double[] inWeights,
+                     double minWeight, boolean integral) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.inOffsets = inOffsets;
+        this.sources = sources;
+        this.inWeights = inWeights;
+        this.minWeight = minWeight;
+        this.integral = integral;
+    }
+
+    /**
+     * Whether every cost is a whole number from 0 to MAX_INTEGRAL, or
+     * a removed edge.
+     */
+    static boolean integral(double[] weights) {
+        for (double w : weights) {
+            if (w != NO_EDGE && !integral(w))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean integral(double w) {
+        return w >= 0 && w <= MAX_INTEGRAL && w == Math.rint(w);
+    }
+
+    /**
+     * Return the dense id of the named vertex, or -1 if absent.
+     */
+    public int id(String name) {
+        return names.id(name);
+    }
+
+    public String name(int v) {
+        return names.name(v);
+    }
+
+    public int vertexCount() {
+        return offsets.length - 1;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Set the cost of every edge from v to w to cost, in both the
+     * out-edge and the in-edge arrays, and return the smallest cost
+     * they had before. Use NO_EDGE to remove the edges.
+     */
+    public double setWeight(int v, int w, double cost) {
+        if (cost < 0 || Double.isNaN(cost))
+            throw new GraphException("Negative edge cost: " + cost);
+        double old = NO_EDGE;
+        boolean found = false;
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            if (targets[e] == w) {
+                old = Math.min(old, weights[e]);
+                weights[e] = cost;
+                found = true;
+            }
+        }
+        if (!found)
+            throw new NoSuchElementException("Edge not found");
+        for (int e = inOffsets[w]; e < inOffsets[w + 1]; e++) {
+            if (sources[e] == v)
+                inWeights[e] = cost;
+        }
+        minWeight = Math.min(minWeight, cost);
+        integral &= cost == NO_EDGE || integral(cost);
+        return old;
+    }
+
+    // Two-way map between the vertex names and their ids 0..n-1, read
+    // by any number of threads at once.
+    interface Names {
+        String name(int v);
+
+        int id(String name);    // -1 if absent
+    }
+
+    // The names of a built graph, indexed by a HashMap.
+    private static class NameTable implements Names {
+        private final String[] names;
+        private final Map<String, Integer> ids;
+
+        NameTable(String[] names) {
+            this.names = names;
+            ids = new HashMap<String, Integer>(Math.max(16, (int) (names.length / 0.75f) + 1));
+            for (int v = 0; v < names.length; v++)
+                ids.put(names[v], v);
+        }
+
+        public String name(int v) {
+            return names[v];
+        }
+
+        public int id(String name) {
+            Integer v = ids.get(name);
+            return v == null ? -1 : v;
+        }
+    }
+
+    // Collects edges and interns names; build() produces the CsrGraph.
+    // Names that are plain decimal numbers are kept in a primitive
+    // table keyed by value, so they can be interned without a String.
+    static class Builder {
+        static final int MAX_NUMERIC_DIGITS = 18;   // Fits a long
+
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final NumericIds numericIds;
+        private final List<String> names;
+        private int[] sources;
+        private int[] dests;
+        private double[] costs;
+        private int edges = 0;
+
+        public Builder() {
+            this(16, 16);
+        }
+
+        /**
+         * A builder presized for the given number of vertices and edges.
+         */
+        public Builder(int vertices, int edges) {
+            names = new ArrayList<String>(Math.max(vertices, 16));
+            numericIds = new NumericIds(Math.max(vertices, 16));
+            sources = new int[Math.max(edges, 16)];
+            dests = new int[sources.length];
+            costs = new double[sources.length];
+        }
+
+        /**
+         * A builder holding the vertices and edges of g, with the same
+         * ids, so more edges can be added to a finished graph.
+         */
+        public Builder(CsrGraph g) {
+            this(g.vertexCount(), g.edgeCount());
+            for (int v = 0; v < g.vertexCount(); v++)
+                intern(g.name(v));
+            for (int v = 0; v < g.vertexCount(); v++) {
+                for (int e = g.offsets[v]; e < g.offsets[v + 1]; e++)
+                    addEdge(v, g.targets[e], g.weights[e]);
+            }
+        }
+
+        /**
+         * If vertexName is not present, give it the next free id.
+         * In either case, return the id.
+         */
+        public int intern(String vertexName) {
+            long value = numericValue(vertexName);
+            if (value >= 0)
+                return intern(value);
+            Integer v = ids.get(vertexName);
+            if (v == null) {
+                v = names.size();
+                ids.put(vertexName, v);
+                names.add(vertexName);
+            }
+            return v;
+        }
+
+        /**
+         * Intern the vertex named by the decimal form of value.
+         */
+        public int intern(long value) {
+            int v = numericIds.get(value);
+            if (v < 0) {
+                v = names.size();
+                numericIds.put(value, v);
+                names.add(Long.toString(value));
+            }
+            return v;
+        }
+
+        /**
+         * The value of name if it is a plain decimal number (no sign,
+         * no leading zeros) short enough for a long, else -1.
+         */
+        static long numericValue(String name) {
+            int length = name.length();
+            if (length == 0 || length > MAX_NUMERIC_DIGITS || (length > 1 && name.charAt(0) == '0'))
+                return -1;
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9')
+                    return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        /**
+         * Add a new edge to the graph.
+         */
+        public void addEdge(String sourceName, String destName, double cost) {
+            addEdge(intern(sourceName), intern(destName), cost);
+        }
+
+        /**
+         * Add a new edge between already interned vertices.
+         */
+        public void addEdge(int source, int dest, double cost) {
+            if (edges == sources.length) {
+                sources = Arrays.copyOf(sources, edges * 2);
+                dests = Arrays.copyOf(dests, edges * 2);
+                costs = Arrays.copyOf(costs, edges * 2);
+            }
+            sources[edges] = source;
+            dests[edges] = dest;
+            costs[edges] = cost;
+            edges++;
+        }
+
+        public int vertexCount() {
+            return names.size();
+        }
+
+        /**
+         * Forget the vertex interned last, which no edge may use yet.
+         */
+        public void dropLast() {
+            String name = names.remove(names.size() - 1);
+            long value = numericValue(name);
+            if (value >= 0)
+                numericIds.remove(value);
+            else
+                ids.remove(name);
+        }
+
+        /**
+         * Freeze the edges added so far into a CsrGraph. The builder
+         * stays usable; later edges only show up in later builds.
+         */
+        public CsrGraph build() {
+            int n = names.size();
+            int[] offsets = groupOffsets(sources, n);
+            int[] targets = new int[edges];
+            double[] weights = new double[edges];
+            scatter(sources, dests, offsets, targets, weights);
+
+            int[] inOffsets = groupOffsets(dests, n);
+            int[] inSources = new int[edges];
+            double[] inWeights = new double[edges];
+            scatter(dests, sources, inOffsets, inSources, inWeights);
+
+            return CsrGraph.of(names.toArray(new String[n]), offsets, targets, weights,
+                    inOffsets, inSources, inWeights);
+        }
+
+        public int edgeCount() {
+            return edges;
+        }
+
+        /**
+         * Prefix sums of the number of edges per key vertex.
+         */
+        private int[] groupOffsets(int[] keys, int n) {
+            int[] offsets = new int[n + 1];
+            for (int e = 0; e < edges; e++)
+                offsets[keys[e] + 1]++;
+            for (int v = 0; v < n; v++)
+                offsets[v + 1] += offsets[v];
+            return offsets;
+        }
+
+        /**
+         * Stable counting sort of the edges by key; keeps adjacency order.
+         */
+        private void scatter(int[] keys, int[] others, int[] offsets,
+                             int[] outOthers, double[] outCosts) {
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int e = 0; e < edges; e++) {
+                int slot = next[keys[e]]++;
+                outOthers[slot] = others[e];
+                outCosts[slot] = costs[e];
+            }
+        }
+
+        // Open-addressing map from numeric vertex name to id.
+        private static class NumericIds {
+            private long[] keys;
+            private int[] values;       // id + 1, 0 for an empty slot
+            private int size = 0;
+
+            NumericIds(int expected) {
+                int capacity = Integer.highestOneBit(Math.max(expected * 2, 16) - 1) << 1;
+                keys = new long[capacity];
+                values = new int[capacity];
+            }
+
+            int get(long key) {
+                int mask = keys.length - 1;
+                for (int slot = hash(key) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+                    if (keys[slot] == key)
+                        return values[slot] - 1;
+                }
+                return -1;
+            }
+
+            void put(long key, int value) {
+                if (2 * (size + 1) > keys.length)
+                    grow();
+                int mask = keys.length - 1;
+                int slot = hash(key) & mask;
+                while (values[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = key;
+                values[slot] = value + 1;
+                size++;
+            }
+
+            /**
+             * Remove key, shifting later entries of its probe run back
+             * so every entry stays reachable from its home slot.
+             */
+            void remove(long key) {
+                int mask = keys.length - 1;
+                int slot = hash(key) & mask;
+                while (values[slot] != 0 && keys[slot] != key)
+                    slot = (slot + 1) & mask;
+                if (values[slot] == 0)
+                    return;
+                int gap = slot;
+                for (int next = (gap + 1) & mask; values[next] != 0; next = (next + 1) & mask) {
+                    int home = hash(keys[next]) & mask;
+                    if (((next - home) & mask) >= ((next - gap) & mask)) {
+                        keys[gap] = keys[next];
+                        values[gap] = values[next];
+                        gap = next;
+                    }
+                }
+                values[gap] = 0;
+                size--;
+            }
+
+            private void grow() {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldValues.length * 2];
+                size = 0;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != 0)
+                        put(oldKeys[i], oldValues[i] - 1);
+                }
+            }
+
+            private static int hash(long key) {
+                long h = key * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32));
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Complete shortest-path trees searched on many cores (delta-stepping,
+// after Meyer and Sanders), for graphs too large for one core.
+//
+// Vertices wait in buckets of width delta by tentative cost. The
+// lowest bucket is emptied in phases: all its vertices relax their
+// light edges (cost <= delta) at once, which may refill it, and once
+// it stays empty the vertices it held relax their heavy edges. Each
+// phase is split over fork-join tasks; a cost is lowered with a
+// compare-and-set on its bits (non-negative doubles order like their
+// bits), and each vertex a phase lowers is queued once. New costs are
+// never more than the largest edge cost beyond the current bucket, so
+// a ring of buckets that wide is enough.
+//
+// Path counts and predecessors are then found in parallel waves over
+// the shortest-path edges: a vertex is counted once all its
+// predecessors on shortest paths are, summing their counts, so
+// dist and paths are exactly those of ShortestPaths.dijkstra. Where
+// several predecessors tie, prev names the one with the smallest cost,
+// which may not be the one a sequential search would name. Graphs
+// with zero-cost edges, and graphs too small to gain, are searched by
+// ShortestPaths.dijkstra instead.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static ShortestPathTree tree( CsrGraph g, int s, boolean reverse )
+//                   --> Complete tree of s as a snapshot, on the
+//                       common fork-join pool
+// static ShortestPathTree tree( CsrGraph g, int s, boolean reverse,
+//                               ForkJoinPool pool )
+//                   --> Same, on pool, whatever the graph's size
+// static boolean pays( CsrGraph g )
+//                   --> Whether tree searches g in parallel
+// ******************ERRORS*********************************
+// GraphException if the graph has negative edges.
+class DeltaStepping {
+    public static final int MIN_VERTICES = 1 << 18;    // Smaller graphs search faster alone
+    public static final int MIN_THREADS = 4;           // About twice Dijkstra's work to win back
+    private static final int GRAIN = 2048;             // Vertices per task
+    private static final int MAX_BUCKETS = 1 << 16;    // Ring size; delta grows to keep it
+
+    private static final int LIGHT = 0;     // Relax edges of cost <= delta
+    private static final int HEAVY = 1;     // Relax the others
+    private static final int PENDING = 2;   // Count each vertex's shortest-path predecessors
+    private static final int COUNT = 3;     // Count paths of vertices whose predecessors are done
+
+    private final CsrGraph graph;
+    private final int start;
+    private final boolean reverse;
+    private final ForkJoinPool pool;
+    private final int[] outOffsets;     // Edges in the search's direction
+    private final int[] outTargets;
+    private final double[] outWeights;
+    private final int[] inOffsets;      // and against it
+    private final int[] inSources;
+    private final double[] inWeights;
+    private final double delta;
+    private final Vertices[] ring;      // Bucket b at ring[b % ring.length]
+
+    private final AtomicLongArray bits; // Tentative cost bits of each vertex
+    private final AtomicIntegerArray queued;    // Last phase that queued v
+    private final AtomicIntegerArray pending;   // Predecessors not yet counted
+    private final double[] dist;
+    private final int[] prev;
+    private final int[] paths;
+    private int phase = 0;
+
+    private DeltaStepping(CsrGraph g, int start, boolean reverse, ForkJoinPool pool) {
+        this.graph = g;
+        this.start = start;
+        this.reverse = reverse;
+        this.pool = pool;
+        outOffsets = reverse ? g.inOffsets : g.offsets;
+        outTargets = reverse ? g.sources : g.targets;
+        outWeights = reverse ? g.inWeights : g.weights;
+        inOffsets = reverse ? g.offsets : g.inOffsets;
+        inSources = reverse ? g.targets : g.sources;
+        inWeights = reverse ? g.weights : g.inWeights;
+
+        // Delta near the mean cost, wide enough for the ring to span the largest
+        double sum = 0;
+        double max = 0;
+        int edges = 0;
+        for (double w : g.weights) {
+            if (w != CsrGraph.NO_EDGE) {
+                sum += w;
+                max = Math.max(max, w);
+                edges++;
+            }
+        }
+        delta = Math.max(edges == 0 ? 1 : sum / edges, max / MAX_BUCKETS);
+        ring = new Vertices[(int) Math.ceil(max / delta) + 2];
+        for (int i = 0; i < ring.length; i++)
+            ring[i] = new Vertices();
+
+        int n = g.vertexCount();
+        bits = new AtomicLongArray(n);
+        queued = new AtomicIntegerArray(n);
+        pending = new AtomicIntegerArray(n);
+        dist = new double[n];
+        prev = new int[n];
+        paths = new int[n];
+    }
+
+    /**
+     * Complete tree of start, searched in parallel on the common
+     * fork-join pool if that pays for g, else by one Dijkstra.
+     */
+    public static ShortestPathTree tree(CsrGraph g, int start, boolean reverse) {
+        if (!pays(g))
+            return ShortestPaths.dijkstra(g, start, reverse).snapshot();
+        return tree(g, start, reverse, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Complete tree of start, searched in parallel on pool.
+     */
+    public static ShortestPathTree tree(CsrGraph g, int start, boolean reverse, ForkJoinPool pool) {
+        if (g.minWeight < 0)
+            throw new GraphException("Graph has negative edges");
+        if (g.minWeight == 0)   // Ties along zero-cost edges need the sequential order
+            return ShortestPaths.dijkstra(g, start, reverse).snapshot();
+        return new DeltaStepping(g, start, reverse, pool).run();
+    }
+
+    /**
+     * Whether g is large enough, and the machine wide enough, for a
+     * parallel search to beat a sequential one.
+     */
+    public static boolean pays(CsrGraph g) {
+        return g.vertexCount() >= MIN_VERTICES && ForkJoinPool.getCommonPoolParallelism() >= MIN_THREADS
+                && g.minWeight > 0;
+    }
+
+    private ShortestPathTree run() {
+        long infinity = Double.doubleToRawLongBits(ShortestPaths.INFINITY);
+        for (int v = 0; v < bits.length(); v++)
+            bits.lazySet(v, infinity);
+        bits.set(start, 0);
+        settle();
+
+        // Path counts in waves from the source down the shortest-path edges
+        phase++;
+        forEach(null, graph.vertexCount(), PENDING);
+        Vertices wave = new Vertices();
+        wave.add(start);
+        while (wave.size > 0) {
+            phase++;
+            wave = forEach(wave.items, wave.size, COUNT);
+        }
+        return ShortestPathTree.snapshot(graph, start, reverse, dist, prev, paths);
+    }
+
+    /**
+     * Give every vertex its final cost, bucket by bucket.
+     */
+    private void settle() {
+        int[] seen = new int[graph.vertexCount()];      // Phase that put v in a frontier
+        int[] member = new int[graph.vertexCount()];    // Last bucket that settled v, plus one
+        ring[0].add(start);
+        long waiting = 1;
+        for (long b = 0; waiting > 0; b++) {
+            int slot = (int) (b % ring.length);
+            Vertices held = ring[slot];
+            ring[slot] = new Vertices();
+            waiting -= held.size;
+
+            // Entries lowered into an earlier bucket since are stale
+            phase++;
+            Vertices frontier = new Vertices();
+            for (int i = 0; i < held.size; i++) {
+                int v = held.items[i];
+                if (seen[v] != phase && bucket(v) == b) {
+                    seen[v] = phase;
+                    frontier.add(v);
+                }
+            }
+            Vertices settled = new Vertices();
+            int round = (int) (b + 1);
+            while (frontier.size > 0) {
+                for (int i = 0; i < frontier.size; i++) {
+                    int v = frontier.items[i];
+                    if (member[v] != round) {
+                        member[v] = round;
+                        settled.add(v);
+                    }
+                }
+                phase++;
+                Vertices lowered = forEach(frontier.items, frontier.size, LIGHT);
+                frontier = new Vertices();
+                for (int i = 0; i < lowered.size; i++) {
+                    int w = lowered.items[i];
+                    long k = bucket(w);
+                    if (k == b) {
+                        frontier.add(w);
+                    } else {
+                        ring[(int) (k % ring.length)].add(w);
+                        waiting++;
+                    }
+                }
+            }
+            phase++;
+            Vertices lowered = forEach(settled.items, settled.size, HEAVY);
+            for (int i = 0; i < lowered.size; i++) {
+                int w = lowered.items[i];
+                ring[(int) (bucket(w) % ring.length)].add(w);
+                waiting++;
+            }
+        }
+    }
+
+    private double cost(int v) {
+        return Double.longBitsToDouble(bits.get(v));
+    }
+
+    private long bucket(int v) {
+        return (long) (cost(v) / delta);
+    }
+
+    /**
+     * Lower the cost of w to d if that is smaller; true if it was.
+     */
+    private boolean lower(int w, double d) {
+        long to = Double.doubleToRawLongBits(d);
+        long current = bits.get(w);
+        while (to < current) {
+            if (bits.compareAndSet(w, current, to))
+                return true;
+            current = bits.get(w);
+        }
+        return false;
+    }
+
+    /**
+     * Run step kind on the first n of items (on every vertex if items
+     * is null), split into tasks of GRAIN; return the vertices the
+     * step queued, each once.
+     */
+    private Vertices forEach(int[] items, int n, int kind) {
+        int tasks = (n + GRAIN - 1) / GRAIN;
+        Vertices[] out = new Vertices[Math.max(tasks, 1)];
+        if (tasks <= 1)
+            step(items, 0, n, kind, out[0] = new Vertices());
+        else
+            pool.invoke(new Steps(items, 0, tasks, n, kind, out));
+        if (tasks <= 1)
+            return out[0];
+        Vertices all = new Vertices();
+        for (Vertices part : out)
+            all.addAll(part);
+        return all;
+    }
+
+    private void step(int[] items, int from, int to, int kind, Vertices out) {
+        for (int i = from; i < to; i++) {
+            int v = items == null ? i : items[i];
+            switch (kind) {
+                case LIGHT:
+                case HEAVY:
+                    relax(v, kind == LIGHT, out);
+                    break;
+                case PENDING:
+                    predecessors(v);
+                    break;
+                default:
+                    count(v, out);
+            }
+        }
+    }
+
+    private void relax(int v, boolean light, Vertices out) {
+        double dv = cost(v);
+        for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+            double c = outWeights[e];
+            if ((c <= delta) != light)
+                continue;
+            int w = outTargets[e];
+            if (lower(w, dv + c) && queued.getAndSet(w, phase) != phase)
+                out.add(w);
+        }
+    }
+
+    /**
+     * Copy out the final cost of v and count its shortest-path
+     * predecessors.
+     */
+    private void predecessors(int v) {
+        double dv = cost(v);
+        dist[v] = dv;
+        prev[v] = -1;
+        if (dv == ShortestPaths.INFINITY || v == start)
+            return;
+        int count = 0;
+        for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+            double dp = cost(inSources[e]);
+            if (dp != ShortestPaths.INFINITY && dp + inWeights[e] == dv)
+                count++;
+        }
+        pending.set(v, count);
+    }
+
+    /**
+     * Every shortest-path predecessor of v is counted: count v, and
+     * queue the vertices it was the last predecessor of.
+     */
+    private void count(int v, Vertices out) {
+        double dv = dist[v];
+        if (v == start) {
+            paths[v] = 1;
+        } else {
+            int count = 0;
+            int via = -1;
+            for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+                int p = inSources[e];
+                double dp = dist[p];
+                if (dp != ShortestPaths.INFINITY && dp + inWeights[e] == dv) {
+                    count = ShortestPaths.addPaths(count, paths[p]);
+                    if (via < 0 || dp < dist[via])
+                        via = p;
+                }
+            }
+            paths[v] = count;
+            prev[v] = via;
+        }
+        for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+            int w = outTargets[e];
+            if (dv + outWeights[e] == dist[w] && pending.decrementAndGet(w) == 0)
+                out.add(w);
+        }
+    }
+
+    // Tasks first to last of a step, each GRAIN items, split in halves.
+    private class Steps extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] items;
+        private final int first;
+        private final int last;
+        private final int n;
+        private final int kind;
+        private final Vertices[] out;
+
+        Steps(int[] items, int first, int last, int n, int kind, Vertices[] out) {
+            this.items = items;
+            this.first = first;
+            this.last = last;
+            this.n = n;
+            this.kind = kind;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                out[first] = new Vertices();
+                step(items, first * GRAIN, Math.min(n, (first + 1) * GRAIN), kind, out[first]);
+                return;
+            }
+            int middle = (first + last) >>> 1;
+            invokeAll(new Steps(items, first, middle, n, kind, out),
+                    new Steps(items, middle, last, n, kind, out));
+        }
+    }
+
+    // Growable list of vertex ids.
+    private static class Vertices {
+        int[] items = new int[16];
+        int size = 0;
+
+        void add(int v) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size * 2);
+            items[size++] = v;
+        }
+
+        void addAll(Vertices other) {
+            if (size + other.size > items.length)
+                items = Arrays.copyOf(items, Math.max(size + other.size, size * 2));
+            System.arraycopy(other.items, 0, items, size, other.size);
+            size += other.size;
+        }
+    }
+}
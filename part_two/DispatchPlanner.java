@@ -0,0 +1,282 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// Plans a client request with one search per direction instead of one
+// search per candidate: a search over reversed edges from the client
+// gives the cost, path count and route from every pickup candidate
+// (taxi, shop) to the client, and a forward search gives the same from
+// the client to every drop-off candidate. Each search stops once the
+// nearest candidate and everything tied with it are settled; a single
+// drop-off is reached with a bidirectional search instead.
+//
+// Given a TreeCache with room for the candidates' trees, the planner
+// instead reads the legs out of complete trees rooted at the
+// candidates themselves (forward from pickups, reversed into
+// drop-offs), so requests against a fixed set of shops and stands need
+// no search once those trees are cached. With precomputed
+// DistanceTables covering the candidates, legs are plain table reads,
+// and with a Router (contraction hierarchy, landmarks) each leg is
+// one goal-directed query. Given a TaxiVoronoi of the pickups, the
+// pickup leg is read from the client's labels unless taxis at several
+// vertices are equally near.
+//
+// ******************PUBLIC OPERATIONS**********************
+// Plan plan( String c, List p, List d ) --> Run both searches for c
+// Plan plan( String c, TaxiVoronoi f, List p, List d )
+//                                       --> Same, pickups read from f
+// DispatchPlanner withTables( P, D )    --> Planner that reads legs from
+//                                           tables P (from pickups) and
+//                                           D (into drop-offs)
+// DispatchPlanner withRouter( R )       --> Planner that routes legs
+//                                           through R (null for none)
+// int repair( int u, int w, double old ) --> Repair the tables after the
+//                                           cost of u -> w changed
+// Plan.pickups / Plan.dropOffs          --> Routes of the nearest
+//                                           members of p / d
+// ******************ERRORS*********************************
+// NoSuchElementException if a named vertex is not in the graph.
+class DispatchPlanner {
+    private final CsrGraph graph;
+    private final TreeCache cache;      // Trees rooted at candidates, or null
+    private final DistanceTable pickupTable;    // From pickups, or null
+    private final DistanceTable dropOffTable;   // Into drop-offs, or null
+    private final Router router;        // Or null
+
+    public DispatchPlanner(CsrGraph graph) {
+        this(graph, null);
+    }
+
+    public DispatchPlanner(CsrGraph graph, TreeCache cache) {
+        this(graph, cache, null, null, null);
+    }
+
+    private DispatchPlanner(CsrGraph graph, TreeCache cache, DistanceTable pickupTable,
+                            DistanceTable dropOffTable, Router router) {
+        this.graph = graph;
+        this.cache = cache;
+        this.pickupTable = pickupTable;
+        this.dropOffTable = dropOffTable;
+        this.router = router;
+    }
+
+    /**
+     * Return a planner that answers from the given tables whenever they
+     * cover all of a request's candidates.
+     */
+    public DispatchPlanner withTables(DistanceTable pickups, DistanceTable dropOffs) {
+        return new DispatchPlanner(graph, cache, pickups, dropOffs, router);
+    }
+
+    /**
+     * Return a planner that routes legs the tables and cache do not
+     * cover through r, which must be built over the same graph.
+     */
+    public DispatchPlanner withRouter(Router r) {
+        return new DispatchPlanner(graph, cache, pickupTable, dropOffTable, r);
+    }
+
+    /**
+     * Repair the distance tables in place after the cost of the edges
+     * from u to w changed from old; return the vertices recounted. The
+     * tree cache is repaired by its owner, and a router must be
+     * dropped, since its index cannot follow the change.
+     */
+    public int repair(int u, int w, double old) {
+        int recounted = 0;
+        if (pickupTable != null)
+            recounted += pickupTable.repair(u, w, old);
+        if (dropOffTable != null)
+            recounted += dropOffTable.repair(u, w, old);
+        return recounted;
+    }
+
+    /**
+     * Run the two searches a request from clientName needs.
+     */
+    public Plan plan(String clientName, List<String> pickups, List<String> dropOffs) {
+        int client = graph.id(clientName);
+        if (client < 0)
+            throw new NoSuchElementException("Client vertex not found");
+        int[] from = ids(pickups);
+        int[] to = ids(dropOffs);
+        if (covers(pickupTable, from) && covers(dropOffTable, to))
+            return new Plan(client, nearestTabled(client, from, pickupTable),
+                    nearestTabled(client, to, dropOffTable));
+        if (cache != null && cache.fits(from.length + to.length))
+            return new Plan(client, nearestCached(client, from, false),
+                    nearestCached(client, to, true));
+        if (router != null)
+            return new Plan(client, nearestRouted(client, from, false),
+                    nearestRouted(client, to, true));
+
+        // Routes are taken out of each tree before the next search reuses its space
+        List<Route> nearestPickups = nearest(ShortestPaths.nearest(graph, client, true, from), from);
+        return new Plan(client, nearestPickups, searchDropOffs(client, to));
+    }
+
+    /**
+     * As plan, but with the pickup leg read from fleet, a Voronoi index
+     * of the pickups, unless the client is tied between taxis at
+     * different vertices.
+     */
+    public Plan plan(String clientName, TaxiVoronoi fleet, List<String> pickups, List<String> dropOffs) {
+        int client = graph.id(clientName);
+        List<Route> nearestPickups = fleet == null || client < 0 ? null : fleet.nearest(client);
+        if (nearestPickups == null)
+            return plan(clientName, pickups, dropOffs);
+        int[] to = ids(dropOffs);
+        if (covers(dropOffTable, to))
+            return new Plan(client, nearestPickups, nearestTabled(client, to, dropOffTable));
+        if (cache != null && cache.fits(to.length))
+            return new Plan(client, nearestPickups, nearestCached(client, to, true));
+        if (router != null)
+            return new Plan(client, nearestPickups, nearestRouted(client, to, true));
+        return new Plan(client, nearestPickups, searchDropOffs(client, to));
+    }
+
+    /**
+     * Legs from client to the nearest of to by search: bidirectional
+     * for a single drop-off.
+     */
+    private List<Route> searchDropOffs(int client, int[] to) {
+        if (to.length != 1)
+            return nearest(ShortestPaths.nearest(graph, client, false, to), to);
+        Route route = ShortestPaths.bidirectional(graph, client, to[0]);
+        List<Route> nearestDropOffs = new ArrayList<Route>();
+        if (route.reachable())
+            nearestDropOffs.add(route);
+        return nearestDropOffs;
+    }
+
+    private int[] ids(List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = graph.id(names.get(i));
+            if (ids[i] < 0)
+                throw new NoSuchElementException("Destination vertex not found");
+        }
+        return ids;
+    }
+
+    /**
+     * Return the routes to the members of candidates at the smallest
+     * finite distance in tree, in order; ties and repeated vertices
+     * are all kept.
+     */
+    static List<Route> nearest(ShortestPathTree tree, int[] candidates) {
+        List<Integer> best = new ArrayList<Integer>();
+        double min = ShortestPaths.INFINITY;
+        for (int v : candidates) {
+            double d = tree.dist(v);
+            if (d < min) {
+                min = d;
+                best.clear();
+                best.add(v);
+            }
+            else if (d == min && d != ShortestPaths.INFINITY) {
+                best.add(v);
+            }
+        }
+        List<Route> routes = new ArrayList<Route>(best.size());
+        for (int v : best)
+            routes.add(Route.of(tree, v));
+        return routes;
+    }
+
+    /**
+     * Like nearest, but reading each candidate's leg from the cached
+     * tree rooted at the candidate: forward trees for pickups, reversed
+     * trees for drop-offs.
+     */
+    private List<Route> nearestCached(int client, int[] candidates, boolean dropOff) {
+        List<ShortestPathTree> best = new ArrayList<ShortestPathTree>();
+        double min = ShortestPaths.INFINITY;
+        for (int v : candidates) {
+            ShortestPathTree tree = cache.tree(v, dropOff);
+            double d = tree.dist(client);
+            if (d < min) {
+                min = d;
+                best.clear();
+                best.add(tree);
+            }
+            else if (d == min && d != ShortestPaths.INFINITY) {
+                best.add(tree);
+            }
+        }
+        List<Route> routes = new ArrayList<Route>(best.size());
+        for (ShortestPathTree tree : best)
+            routes.add(Route.of(tree, client));
+        return routes;
+    }
+
+    /**
+     * Like nearest, but with one router query per candidate: from
+     * each pickup to client, or from client to each drop-off.
+     */
+    private List<Route> nearestRouted(int client, int[] candidates, boolean dropOff) {
+        List<Route> best = new ArrayList<Route>();
+        double min = ShortestPaths.INFINITY;
+        for (int v : candidates) {
+            Route route = dropOff ? router.route(client, v) : router.route(v, client);
+            if (route.cost < min) {
+                min = route.cost;
+                best.clear();
+                best.add(route);
+            }
+            else if (route.cost == min && route.cost != ShortestPaths.INFINITY) {
+                best.add(route);
+            }
+        }
+        return best;
+    }
+
+    private static boolean covers(DistanceTable table, int[] candidates) {
+        if (table == null)
+            return false;
+        for (int v : candidates) {
+            if (table.column(v) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Like nearest, but reading each candidate's leg from its column
+     * of a precomputed table.
+     */
+    private static List<Route> nearestTabled(int client, int[] candidates, DistanceTable table) {
+        List<Integer> best = new ArrayList<Integer>();
+        double min = ShortestPaths.INFINITY;
+        for (int v : candidates) {
+            int column = table.column(v);
+            double d = table.dist(client, column);
+            if (d < min) {
+                min = d;
+                best.clear();
+                best.add(column);
+            }
+            else if (d == min && d != ShortestPaths.INFINITY) {
+                best.add(column);
+            }
+        }
+        List<Route> routes = new ArrayList<Route>(best.size());
+        for (int column : best)
+            routes.add(table.route(client, column));
+        return routes;
+    }
+
+    // The legs worth printing for one client.
+    static class Plan {
+        final int client;
+        final List<Route> pickups;      // From the nearest pickups to client
+        final List<Route> dropOffs;     // From client to the nearest drop-offs
+
+        Plan(int client, List<Route> pickups, List<Route> dropOffs) {
+            this.client = client;
+            this.pickups = pickups;
+            this.dropOffs = dropOffs;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Precomputed many-to-many table between a small set of sources (shops,
+// taxi stands) and every vertex: cost, path count and predecessor of
+// each vertex in the complete tree of each source.
+//
+// Entries are stored vertex-major, slot v * k + column for k sources, so
+// everything a client needs about all sources sits in one short run of
+// each array and a request becomes a handful of array reads. A forward
+// table holds paths from the sources; a reverse table holds paths into
+// them. The trees are searched in parallel, one source per task.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static DistanceTable build( CsrGraph g, int[] s, boolean reverse, int threads )
+//                            --> Search every source of s
+// int column( int s )        --> Column of source s, -1 if none
+// int source( int c )        --> Source of column c
+// double dist( int v, int c ) / int paths( int v, int c )
+// Route route( int v, int c ) --> Leg between v and source c
+// int repair( int u, int w, double old )
+//                            --> Repair every column after the cost
+//                                of u -> w changed from old
+// long bytes( ) / String stats( )
+//                            --> Memory and build-time report
+class DistanceTable {
+    final CsrGraph graph;
+    final boolean reverse;
+    private final int[] sources;        // Source vertex of each column
+    private final Map<Integer, Integer> columns = new HashMap<Integer, Integer>();
+    private final double[] dist;
+    private final int[] prev;
+    private final int[] paths;
+    private long buildNanos;
+
+    private DistanceTable(CsrGraph graph, int[] sources, boolean reverse) {
+        this.graph = graph;
+        this.reverse = reverse;
+        this.sources = sources;
+        for (int c = 0; c < sources.length; c++)
+            columns.put(sources[c], c);
+        long size = (long) sources.length * graph.vertexCount();
+        if (size > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many sources for a distance table: " + sources.length);
+        dist = new double[(int) size];
+        prev = new int[(int) size];
+        paths = new int[(int) size];
+    }
+
+    /**
+     * Search the complete tree of every distinct vertex of sources on
+     * threads worker threads and store them as one table.
+     */
+    public static DistanceTable build(CsrGraph g, int[] sources, boolean reverse, int threads) {
+        long start = System.nanoTime();
+        int[] distinct = Arrays.stream(sources).distinct().toArray();
+        DistanceTable table = new DistanceTable(g, distinct, reverse);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(distinct.length);
+            for (int c = 0; c < distinct.length; c++) {
+                final int column = c;
+                tasks.add(() -> {
+                    table.fill(column);
+                    return null;
+                });
+            }
+            for (Future<Void> done : pool.invokeAll(tasks))
+                done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building distance table", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        table.buildNanos = System.nanoTime() - start;
+        return table;
+    }
+
+    /**
+     * Run the search for one column and copy its tree in.
+     */
+    private void fill(int column) {
+        ShortestPathTree tree = ShortestPaths.dijkstra(graph, sources[column], reverse);
+        int k = sources.length;
+        for (int v = 0, slot = column; v < graph.vertexCount(); v++, slot += k) {
+            dist[slot] = tree.dist(v);
+            prev[slot] = tree.prev(v);
+            paths[slot] = tree.paths(v);
+        }
+    }
+
+    public int column(int source) {
+        Integer c = columns.get(source);
+        return c == null ? -1 : c;
+    }
+
+    public int source(int column) {
+        return sources[column];
+    }
+
+    public double dist(int v, int column) {
+        return dist[v * sources.length + column];
+    }
+
+    public int paths(int v, int column) {
+        return paths[v * sources.length + column];
+    }
+
+    /**
+     * The leg between v and the source of column, in driving order.
+     */
+    public Route route(int v, int column) {
+        int k = sources.length;
+        int source = sources[column];
+        int from = reverse ? v : source;
+        int to = reverse ? source : v;
+        if (dist(v, column) == ShortestPaths.INFINITY)
+            return new Route(from, to, ShortestPaths.INFINITY, 0, null);
+
+        int length = 0;
+        for (int u = v; u != -1; u = prev[u * k + column])
+            length++;
+        int[] vertices = new int[length];
+        SearchMetrics.route(length);
+        int i = reverse ? 0 : length - 1;
+        int step = reverse ? 1 : -1;
+        for (int u = v; u != -1; u = prev[u * k + column], i += step)
+            vertices[i] = u;
+        return new Route(from, to, dist(v, column), paths(v, column), vertices);
+    }
+
+    /**
+     * Repair every column in place after the cost of the edges from u
+     * to w changed from old, and return the number of vertices
+     * recounted.
+     */
+    public int repair(int u, int w, double old) {
+        int recounted = 0;
+        for (int c = 0; c < sources.length; c++)
+            recounted += new TreeRepair(graph, sources[c], reverse, dist, prev, paths, c, sources.length)
+                    .edgeChanged(u, w, old);
+        return recounted;
+    }
+
+    public long bytes() {
+        return 16L * dist.length;
+    }
+
+    public String stats() {
+        return "distance table (" + (reverse ? "into" : "from") + " " + sources.length
+                + " sources x " + graph.vertexCount() + " vertices): " + bytes() + " bytes, built in "
+                + buildNanos / 1000000 + " ms";
+    }
+}
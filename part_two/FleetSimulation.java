@@ -0,0 +1,492 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// Discrete-event simulation of a taxi fleet serving a day of requests.
+//
+// Unlike processRequest, which lends every client the nearest taxi
+// whether or not it was just lent to someone else, a taxi here is
+// taken: it drives to its client and on to the client's shop, is busy
+// until it arrives there, and is then free at the shop. A request that
+// finds no free taxi waits; each taxi that becomes free takes the
+// waiting request nearest to it, the oldest of those equally near. A
+// waiting client gives up after patience time units. Edge costs are
+// travel times.
+//
+// A trip is simulated by its legs, not by the taxi's progress along
+// them: a taxi is placed at its client's shop when the trip ends and
+// nowhere in between. Since a busy taxi is never reassigned, where it
+// is along its route changes no decision.
+//
+// Events (arrivals, trip ends, give-ups) sit in a min-heap of times,
+// ties kept in the order they were scheduled, so a run is
+// deterministic. Route queries are shared across the fleet: every leg
+// to or from a shop is a read from DistanceTables into and out of the
+// shops, built in parallel before the first event. As taxis are freed
+// at shops, an arrival first reads the nearest shop with a free taxi
+// from the table, then looks for a nearer taxi that is not at a shop
+// with one reverse search from the client, cut off at that shop's cost.
+// Taxis away from shops are only taken, never freed, so once few of
+// them are left (when those searches would find one least often) their
+// costs go into a table of their own and the searches stop. Free taxis
+// are kept in a list per vertex, so taking and freeing a taxi is O(1).
+// Taxis are only freed at shops, so a waiting request goes into a heap
+// per shop that reaches it, keyed by its pickup cost from the shop
+// table, and a freed taxi takes the top of its shop's heap: O(log w)
+// per taxi, and one push per shop for each request that waits, as the
+// shop tables take a column per shop. Requests taken or given up are
+// dropped from a heap as they reach the top, or all at once when they
+// outnumber the requests still waiting.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void request( double t, int client, int shop )
+//                            --> Add a request arriving at time t
+// String run( )              --> Simulate every request; return a
+//                                summary of service and speed
+// long served( ) / gaveUp( ) / rejected( ) / events( )
+//                            --> Counters of the last run
+class FleetSimulation {
+    public static final int STRAY_TABLE = 64;  // Strays few enough for a table
+
+    private static final int ARRIVE = 0;
+    private static final int TRIP_END = 1;
+    private static final int GIVE_UP = 2;
+
+    private final CsrGraph graph;
+    private final double patience;
+    private final int threads;          // For building the tables
+    private final SearchSpace space;
+
+    // Taxis: where each free one is, where each busy one is headed
+    private final int[] taxiAt;
+    private final int[] tripShop;       // Table column of the shop
+    private final int[] freeHead;       // First free taxi at v, -1 if none
+    private final int[] nextFree;       // Next free taxi at the same vertex
+    private int strays;                 // Free taxis not at a shop
+    private final IntPredicate nearerStray;
+    private double limit;               // Cost of the nearest free taxi so far
+    private DistanceTable intoShops;    // Built by run()
+    private DistanceTable fromShops;
+    private DistanceTable fromStrays;   // Built once strays are few
+    private boolean[] isShop;
+    private int shopCount;
+    private int strayCount;             // Columns of fromStrays
+
+    // Requests in the order they were added
+    private double[] arrival = new double[16];
+    private int[] client = new int[16];
+    private int[] shop = new int[16];
+    private boolean[] open = new boolean[16];  // Waiting for a taxi
+    private int requests = 0;
+
+    // Waiting requests by pickup cost from each shop; closed ones are skipped
+    private WaitingHeap[] waitingFrom;  // By table column, built by run()
+    private int waited = 0;             // Requests that have waited, in arrival order
+    private int waitingCount = 0;       // Requests waiting now
+
+    private final EventQueue events = new EventQueue();
+    private long served = 0;
+    private long gaveUp = 0;
+    private long rejected = 0;
+    private long processed = 0;
+    private double totalWait = 0;
+    private double totalPickup = 0;
+    private double end = 0;
+
+    /**
+     * A fleet on g with one taxi at each entry of taxis, all free.
+     * Clients give up after waiting patience (INFINITY: never). The
+     * shop tables are searched on threads threads.
+     */
+    public FleetSimulation(CsrGraph g, int[] taxis, double patience, int threads) {
+        this.graph = g;
+        this.patience = patience;
+        this.threads = threads;
+        this.space = new SearchSpace(g.vertexCount());
+        taxiAt = taxis.clone();
+        tripShop = new int[taxis.length];
+        freeHead = new int[g.vertexCount()];
+        nextFree = new int[taxis.length];
+        Arrays.fill(freeHead, -1);
+        nearerStray = v -> (freeHead[v] >= 0 && !isShop[v]) || space.dist[v] >= limit;
+        for (int j = taxis.length - 1; j >= 0; j--)   // First listed first taken
+            free(j, taxis[j]);
+    }
+
+    /**
+     * Add a request from client to shop arriving at time t; a vertex
+     * of -1 (not in the graph) means the request cannot be helped.
+     */
+    public void request(double t, int clientId, int shopId) {
+        if (requests == arrival.length) {
+            int capacity = requests * 2;
+            arrival = Arrays.copyOf(arrival, capacity);
+            client = Arrays.copyOf(client, capacity);
+            shop = Arrays.copyOf(shop, capacity);
+            open = Arrays.copyOf(open, capacity);
+        }
+        arrival[requests] = t;
+        client[requests] = clientId;
+        shop[requests] = shopId;
+        events.add(t, ARRIVE, requests);
+        requests++;
+    }
+
+    /**
+     * Process every event in time order and return a summary.
+     */
+    public String run() {
+        long start = System.nanoTime();
+        int[] shops = new int[requests];
+        for (int r = 0; r < requests; r++)
+            shops[r] = shop[r];
+        shops = Arrays.stream(shops).filter(v -> v >= 0).distinct().toArray();
+        shopCount = shops.length;
+        isShop = new boolean[graph.vertexCount()];
+        for (int s : shops)
+            isShop[s] = true;
+        strays = 0;
+        for (int v = 0; v < freeHead.length; v++) {
+            for (int j = freeHead[v]; j >= 0 && !isShop[v]; j = nextFree[j])
+                strays++;
+        }
+        intoShops = DistanceTable.build(graph, shops, true, threads);
+        fromShops = DistanceTable.build(graph, shops, false, threads);
+        for (int r = 0; r < requests; r++) {   // Shops by column from here on
+            if (shop[r] >= 0)
+                shop[r] = intoShops.column(shop[r]);
+        }
+        waitingFrom = new WaitingHeap[shopCount];
+        for (int c = 0; c < shopCount; c++)
+            waitingFrom[c] = new WaitingHeap();
+        long tables = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        while (!events.isEmpty()) {
+            double t = events.peekTime();
+            int kind = events.peekKind();
+            int id = events.poll();
+            processed++;
+            end = t;
+            if (kind == ARRIVE)
+                arrive(t, id);
+            else if (kind == TRIP_END)
+                tripEnd(t, id);
+            else if (open[id]) {
+                open[id] = false;
+                waitingCount--;
+                gaveUp++;
+            }
+        }
+        return summary(tables, System.nanoTime() - start);
+    }
+
+    private void arrive(double t, int r) {
+        double toShop = client[r] < 0 || shop[r] < 0 ? ShortestPaths.INFINITY
+                : intoShops.dist(client[r], shop[r]);
+        if (toShop == ShortestPaths.INFINITY) {
+            rejected++;
+            return;
+        }
+        limit = ShortestPaths.INFINITY;
+        int best = nearer(fromShops, shopCount, client[r], -1);
+        if (fromStrays == null && strays > 0 && strays <= STRAY_TABLE)
+            fromStrays = strayTable();
+        if (fromStrays != null) {
+            best = nearer(fromStrays, strayCount, client[r], best);
+        } else if (strays > 0) {
+            ShortestPaths.nearest(graph, client[r], true, nearerStray, space);
+            for (int i = 0; i < space.settledCount; i++) {
+                int v = space.order[i];
+                if (space.dist[v] >= limit)
+                    break;
+                if (freeHead[v] >= 0 && !isShop[v]) {
+                    best = v;
+                    limit = space.dist[v];
+                    break;
+                }
+            }
+        }
+        if (best >= 0) {
+            dispatch(t, r, take(best), limit, toShop);
+            return;
+        }
+        open[r] = true;
+        waitingCount++;
+        int rank = waited++;
+        for (int c = 0; c < shopCount; c++) {
+            double pickup = fromShops.dist(client[r], c);
+            if (pickup != ShortestPaths.INFINITY)
+                waitingFrom[c].add(pickup, rank, r);
+        }
+        if (patience != ShortestPaths.INFINITY)
+            events.add(t + patience, GIVE_UP, r);
+    }
+
+    /**
+     * Taxi j arrived at its shop: free it there, then let it take the
+     * nearest waiting request it can reach.
+     */
+    private void tripEnd(double t, int j) {
+        int column = tripShop[j];
+        WaitingHeap waiting = waitingFrom[column];
+        if (waiting.size() > 2 * waitingCount + 16)
+            waiting.retain(open);
+        while (!waiting.isEmpty() && !open[waiting.peek()])
+            waiting.poll();
+        if (waiting.isEmpty()) {
+            free(j, fromShops.source(column));
+            return;
+        }
+        int r = waiting.poll();
+        open[r] = false;
+        waitingCount--;
+        dispatch(t, r, j, fromShops.dist(client[r], column), intoShops.dist(client[r], shop[r]));
+    }
+
+    /**
+     * The vertex of the source of from nearest to v with a free taxi,
+     * if nearer than limit, else best; lowers limit to its cost.
+     */
+    private int nearer(DistanceTable from, int columns, int v, int best) {
+        for (int c = 0; c < columns; c++) {
+            double d = from.dist(v, c);
+            if (d < limit && freeHead[from.source(c)] >= 0) {
+                best = from.source(c);
+                limit = d;
+            }
+        }
+        return best;
+    }
+
+    private DistanceTable strayTable() {
+        int[] at = new int[strays];
+        int n = 0;
+        for (int v = 0; v < freeHead.length; v++) {
+            if (freeHead[v] >= 0 && !isShop[v])
+                at[n++] = v;
+        }
+        strayCount = n;
+        return DistanceTable.build(graph, Arrays.copyOf(at, n), false, threads);
+    }
+
+    private void dispatch(double t, int r, int j, double pickup, double toShop) {
+        served++;
+        totalWait += t - arrival[r];
+        totalPickup += pickup;
+        tripShop[j] = shop[r];
+        events.add(t + pickup + toShop, TRIP_END, j);
+    }
+
+    private void free(int j, int v) {
+        taxiAt[j] = v;
+        nextFree[j] = freeHead[v];
+        freeHead[v] = j;
+    }
+
+    private int take(int v) {
+        int j = freeHead[v];
+        freeHead[v] = nextFree[j];
+        if (!isShop[v])
+            strays--;
+        return j;
+    }
+
+    public long served() {
+        return served;
+    }
+
+    public long gaveUp() {
+        return gaveUp;
+    }
+
+    public long rejected() {
+        return rejected;
+    }
+
+    public long events() {
+        return processed;
+    }
+
+    private String summary(long tableNanos, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("fleet of %d taxis, %d requests until time %.0f: %d served "
+                        + "(mean wait %.1f, mean pickup %.1f), %d gave up, %d cannot be helped, %d never served%n"
+                        + "shop tables built in %d ms; %d events in %.1f ms: %.0f events/s",
+                taxiAt.length, requests, end, served, served == 0 ? 0 : totalWait / served,
+                served == 0 ? 0 : totalPickup / served, gaveUp, rejected,
+                requests - served - gaveUp - rejected, tableNanos / 1000000, processed, seconds * 1e3,
+                processed / seconds);
+    }
+
+    // Min-heap of waiting requests by pickup cost, then by the order
+    // they began to wait, which is the order of their arrival.
+    private static class WaitingHeap {
+        private double[] costs = new double[16];
+        private int[] ranks = new int[16];
+        private int[] ids = new int[16];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(double cost, int rank, int r) {
+            if (size == costs.length) {
+                costs = Arrays.copyOf(costs, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int slot = size++;
+            while (slot > 0) {
+                int parent = (slot - 1) >>> 1;
+                if (!before(cost, rank, costs[parent], ranks[parent]))
+                    break;
+                move(parent, slot);
+                slot = parent;
+            }
+            costs[slot] = cost;
+            ranks[slot] = rank;
+            ids[slot] = r;
+        }
+
+        int peek() {
+            return ids[0];
+        }
+
+        /**
+         * Remove the nearest request and return it.
+         */
+        int poll() {
+            int r = ids[0];
+            size--;
+            siftDown(0, costs[size], ranks[size], ids[size]);
+            return r;
+        }
+
+        /**
+         * Drop every request that keep does not hold true for.
+         */
+        void retain(boolean[] keep) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (keep[ids[i]])
+                    move(i, kept++);
+            }
+            size = kept;
+            for (int slot = size / 2 - 1; slot >= 0; slot--)
+                siftDown(slot, costs[slot], ranks[slot], ids[slot]);
+        }
+
+        /**
+         * Put the entry (cost, rank, last) at slot, or below it.
+         */
+        private void siftDown(int slot, double cost, int rank, int last) {
+            while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && before(costs[child + 1], ranks[child + 1], costs[child], ranks[child]))
+                    child++;
+                if (!before(costs[child], ranks[child], cost, rank))
+                    break;
+                move(child, slot);
+                slot = child;
+            }
+            costs[slot] = cost;
+            ranks[slot] = rank;
+            ids[slot] = last;
+        }
+
+        private void move(int from, int to) {
+            costs[to] = costs[from];
+            ranks[to] = ranks[from];
+            ids[to] = ids[from];
+        }
+
+        private static boolean before(double c1, int r1, double c2, int r2) {
+            return c1 < c2 || (c1 == c2 && r1 < r2);
+        }
+    }
+
+    // Min-heap of events by time, then by the order they were added.
+    private static class EventQueue {
+        private double[] times = new double[16];
+        private long[] order = new long[16];    // Sequence number << 2 | kind
+        private int[] ids = new int[16];
+        private int size = 0;
+        private long added = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double t, int kind, int id) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                order = Arrays.copyOf(order, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int slot = size++;
+            long o = added++ << 2 | kind;
+            while (slot > 0) {
+                int parent = (slot - 1) >>> 1;
+                if (!before(t, o, times[parent], order[parent]))
+                    break;
+                move(parent, slot);
+                slot = parent;
+            }
+            times[slot] = t;
+            order[slot] = o;
+            ids[slot] = id;
+        }
+
+        double peekTime() {
+            return times[0];
+        }
+
+        int peekKind() {
+            return (int) (order[0] & 3);
+        }
+
+        /**
+         * Remove the earliest event and return its id.
+         */
+        int poll() {
+            int id = ids[0];
+            size--;
+            double t = times[size];
+            long o = order[size];
+            int last = ids[size];
+            int slot = 0;
+            while (true) {
+                int child = 2 * slot + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && before(times[child + 1], order[child + 1], times[child], order[child]))
+                    child++;
+                if (!before(times[child], order[child], t, o))
+                    break;
+                move(child, slot);
+                slot = child;
+            }
+            times[slot] = t;
+            order[slot] = o;
+            ids[slot] = last;
+            return id;
+        }
+
+        private void move(int from, int to) {
+            times[to] = times[from];
+            order[to] = order[from];
+            ids[to] = ids[from];
+        }
+
+        private static boolean before(double t1, long o1, double t2, long o2) {
+            return t1 < t2 || (t1 == t2 && o1 < o2);
+        }
+    }
+}
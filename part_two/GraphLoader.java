@@ -0,0 +1,52 @@
+
+import java.util.NoSuchElementException;
+
+// Reads the adjacency-list section of the simulators' input:
+//
+// {<source node> {<destination node> <weight>}*<newline>}*
+//
+// straight into a CsrGraph.Builder, interning numeric node names
+// without building Strings. The builder collects the raw edges in one
+// pass and build() groups them into exactly sized CSR arrays in a
+// second. As with addEdge, a node only becomes a vertex once an edge
+// leaves or enters it; a line with no edges adds nothing.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static int readEdges( InputReader in, int lines, CsrGraph.Builder b )
+//                            --> Read lines adjacency lines into b
+// static String report( CsrGraph g, long bytes, long nanos )
+//                            --> Load size and throughput summary
+class GraphLoader {
+
+    private GraphLoader() {
+    }
+
+    /**
+     * Read the given number of adjacency lines into b and return the
+     * number of edges read.
+     */
+    public static int readEdges(InputReader in, int lines, CsrGraph.Builder b) {
+        int edges = 0;
+        for (int i = 0; i < lines; i++) {
+            if (!in.nextLine())
+                throw new NoSuchElementException("No line found");
+            int known = b.vertexCount();
+            int source = in.nextVertex(b);
+            if (!in.hasMoreTokens() && source == known)
+                b.dropLast();               // No edge yet, so not a vertex yet
+            while (in.hasMoreTokens()) {
+                int dest = in.nextVertex(b);
+                int cost = in.nextInt();
+                b.addEdge(source, dest, cost);
+                edges++;
+            }
+        }
+        return edges;
+    }
+
+    public static String report(CsrGraph g, long bytes, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        return String.format("loaded %d vertices, %d edges (%d bytes) in %.1f ms: %.0f edges/s",
+                g.vertexCount(), g.edgeCount(), bytes, seconds * 1e3, g.edgeCount() / seconds);
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of non-negative longs (latencies in nanoseconds,
+// vertex counts) with buckets of bounded relative width, in the manner
+// of HdrHistogram.
+//
+// Values below 16 get a bucket each; above that every power of two is
+// split into 16 buckets, so a bucket is at most 1/16 of its values wide
+// and a percentile is within 6.25% of the true one. The 976 buckets
+// cover every long in 8 KB. Recording is one atomic increment, so any
+// number of threads can record at once while another reads.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void record( long v )      --> Count v (negatives count as 0)
+// long count( ) / long max( ) / double mean( )
+// long percentile( double p ) --> Value p percent of the recorded
+//                                 values are at most, to the bucket
+// void reset( )              --> Forget every value
+class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;     // Buckets per power of two
+    private static final int BUCKETS = SUB * (64 - SUB_BITS + 1);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long v) {
+        v = Math.max(0, v);
+        counts.incrementAndGet(bucket(v));
+        total.increment();
+        sum.add(v);
+        if (v > max.get())
+            max.accumulateAndGet(v, Math::max);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * The largest value of the bucket holding the value p percent of
+     * the way through the recorded values, 0 if there are none.
+     */
+    public long percentile(double p) {
+        long n = 0;
+        for (int b = 0; b < BUCKETS; b++)
+            n += counts.get(b);
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank)
+                return Math.min(highest(b), max());
+        }
+        return max();
+    }
+
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++)
+            counts.set(b, 0);
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    private static int bucket(long v) {
+        if (v < SUB)
+            return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);      // At least SUB_BITS
+        int shift = exponent - SUB_BITS;
+        return SUB * (shift + 1) + (int) (v >>> shift) - SUB;
+    }
+
+    private static long highest(int b) {
+        if (b < SUB)
+            return b;
+        int shift = b / SUB - 1;
+        long lowest = (long) (SUB + b % SUB) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
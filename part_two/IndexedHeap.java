@@ -0,0 +1,136 @@
+
+import java.util.Arrays;
+
+// Indexed 4-ary min-heap of vertex ids with decrease-key (a VertexQueue).
+//
+// Ids are ordered by keys[id], an array owned by the caller (the
+// search's distance array), so nothing is allocated per operation and
+// the heap never holds more than one entry per vertex. An optional
+// second array breaks ties between equal keys, smaller first.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void add( int v )          --> Insert v, keyed by keys[v]
+// void decreased( int v )    --> Restore order after keys[v] dropped
+// int poll( )                --> Remove and return the smallest id
+// double peekKey( )          --> keys of the smallest id
+// boolean contains( int v ) / isEmpty( ) / clear( )
+class IndexedHeap implements VertexQueue {
+    private static final int D = 4;     // Children per node
+
+    private final double[] keys;
+    private final double[] ties;        // Tie-breaking keys, or null
+    private final int[] heap;           // Ids in heap order
+    private final int[] pos;            // Slot of each id in heap, -1 if absent
+    private int size = 0;
+
+    public IndexedHeap(double[] keys) {
+        this(keys, null);
+    }
+
+    public IndexedHeap(double[] keys, double[] ties) {
+        this.keys = keys;
+        this.ties = ties;
+        this.heap = new int[keys.length];
+        this.pos = new int[keys.length];
+        Arrays.fill(pos, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int v) {
+        return pos[v] >= 0;
+    }
+
+    public void add(int v) {
+        heap[size] = v;
+        pos[v] = size;
+        siftUp(size++);
+    }
+
+    /**
+     * Move v up after its key was lowered.
+     */
+    public void decreased(int v) {
+        siftUp(pos[v]);
+    }
+
+    public double peekKey() {
+        return keys[heap[0]];
+    }
+
+    public int poll() {
+        int min = heap[0];
+        pos[min] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Remove every entry; O(size), not O(capacity).
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++)
+            pos[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int v = heap[slot];
+        double k = keys[v];
+        while (slot > 0) {
+            int parent = (slot - 1) / D;
+            int p = heap[parent];
+            if (keys[p] < k || (keys[p] == k && !tieBefore(v, p)))
+                break;
+            heap[slot] = p;
+            pos[p] = slot;
+            slot = parent;
+        }
+        heap[slot] = v;
+        pos[v] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int v = heap[slot];
+        double k = keys[v];
+        while (true) {
+            int first = slot * D + 1;
+            if (first >= size)
+                break;
+            int last = Math.min(first + D, size);
+            int best = first;
+            double bestKey = keys[heap[first]];
+            for (int c = first + 1; c < last; c++) {
+                double ck = keys[heap[c]];
+                if (ck < bestKey || (ck == bestKey && tieBefore(heap[c], heap[best]))) {
+                    best = c;
+                    bestKey = ck;
+                }
+            }
+            if (bestKey > k || (bestKey == k && !tieBefore(heap[best], v)))
+                break;
+            heap[slot] = heap[best];
+            pos[heap[slot]] = slot;
+            slot = best;
+        }
+        heap[slot] = v;
+        pos[v] = slot;
+    }
+
+    /**
+     * Whether a goes before b when their keys are equal.
+     */
+    private boolean tieBefore(int a, int b) {
+        return ties != null && ties[a] < ties[b];
+    }
+}
@@ -0,0 +1,34 @@
+
+// One leg between two vertices: its cost, the number of equal-cost
+// shortest paths, and the vertices of one of them in driving order
+// (null if to cannot be reached from from).
+class Route {
+    final int from;
+    final int to;
+    final double cost;
+    final int paths;
+    final int[] vertices;
+
+    Route(int from, int to, double cost, int paths, int[] vertices) {
+        this.from = from;
+        this.to = to;
+        this.cost = cost;
+        this.paths = paths;
+        this.vertices = vertices;
+    }
+
+    /**
+     * The leg between the root of tree and v, in the tree's direction.
+     */
+    static Route of(ShortestPathTree tree, int v) {
+        int from = tree.reverse ? v : tree.source;
+        int to = tree.reverse ? tree.source : v;
+        if (!tree.reachable(v))
+            return new Route(from, to, ShortestPaths.INFINITY, 0, null);
+        return new Route(from, to, tree.dist(v), tree.paths(v), tree.route(v));
+    }
+
+    public boolean reachable() {
+        return vertices != null;
+    }
+}
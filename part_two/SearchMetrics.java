@@ -0,0 +1,301 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Counters and latency histograms of the searches and queries run in
+// this JVM, to see why some requests are slow. Off until enabled; then
+// every ShortestPaths search adds the vertices it settled, the edges
+// it relaxed and the heap entries it pushed and lowered, every route
+// read out of a tree or table its length, and every query the time it
+// spent in each phase. The heaps have decrease-key, so they never hold
+// stale entries to pop; decrease-keys are counted in their place.
+//
+// A search counts in plain fields of its own and adds them to the
+// totals once, when it ends, so the inner loop pays an increment per
+// edge and threads share nothing while searching. Totals are
+// LongAdders and latencies Histograms, both lock-free. Enabling also
+// registers the totals as the MBean "taxi:type=SearchMetrics", and
+// each query is a JFR event ("taxi.Query") whenever a recording asks
+// for it.
+//
+// ******************PUBLIC OPERATIONS**********************
+// static void enable( boolean on ) / boolean enabled( )
+// static long begin( )       --> Open a query on this thread; return its
+//                                start time, 0 if metrics are off
+// static long phase( Phase p, long since )
+//                            --> Record the time from since in p; now
+// static void end( String query, long start )
+//                            --> Close the query opened at start
+// static void searched( int settled, long relaxed, int pushes, int lowered )
+//                            --> Counts of one finished search
+// static void route( int vertices ) --> Length of a route read out
+// static String summary( )   --> Totals and percentiles of the run
+// static void clear( )       --> Start counting again from zero
+class SearchMetrics implements SearchMetricsMBean {
+    enum Phase { SEARCH, ROUTE, PLAN, PRINT }   // Trees, getDistance, request legs, output
+
+    private static volatile boolean enabled = false;
+    private static boolean registered = false;
+
+    private static final LongAdder queries = new LongAdder();
+    private static final LongAdder searches = new LongAdder();
+    private static final LongAdder settled = new LongAdder();
+    private static final LongAdder relaxed = new LongAdder();
+    private static final LongAdder pushes = new LongAdder();
+    private static final LongAdder lowered = new LongAdder();
+    private static final Histogram settledPerQuery = new Histogram();
+    private static final Histogram routes = new Histogram();
+    private static final Histogram[] phases = new Histogram[Phase.values().length];
+    static {
+        for (int p = 0; p < phases.length; p++)
+            phases[p] = new Histogram();
+    }
+
+    private static final ThreadLocal<Query> CURRENT = ThreadLocal.withInitial(Query::new);
+
+    private SearchMetrics() {
+    }
+
+    /**
+     * Turn counting on or off; the first time it is turned on the
+     * totals are registered with the platform MBean server.
+     */
+    public static synchronized void enable(boolean on) {
+        if (on && !registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new StandardMBean(new SearchMetrics(), SearchMetricsMBean.class),
+                        new ObjectName("taxi:type=SearchMetrics"));
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register search metrics", e);
+            }
+            registered = true;
+        }
+        enabled = on;
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Open a query on this thread: the searches and routes until end
+     * are counted as its own. Returns the start time, 0 if off.
+     */
+    public static long begin() {
+        if (!enabled)
+            return 0;
+        Query q = CURRENT.get();
+        q.clear();
+        QueryEvent event = new QueryEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            q.event = event;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time from since (as returned by begin or phase) in
+     * phase p, and return the current time for the next phase.
+     */
+    public static long phase(Phase p, long since) {
+        if (since == 0)
+            return 0;
+        long now = System.nanoTime();
+        phases[p.ordinal()].record(now - since);
+        return now;
+    }
+
+    /**
+     * Close the query opened at start, recording its counts; query
+     * names it in the JFR event.
+     */
+    public static void end(String query, long start) {
+        if (start == 0)
+            return;
+        Query q = CURRENT.get();
+        queries.increment();
+        settledPerQuery.record(q.settled);
+        QueryEvent event = q.event;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.query = query;
+                event.searches = q.searches;
+                event.settled = q.settled;
+                event.relaxed = q.relaxed;
+                event.pushes = q.pushes;
+                event.lowered = q.lowered;
+                event.routeVertices = q.routeVertices;
+                event.commit();
+            }
+            q.event = null;
+        }
+    }
+
+    /**
+     * Add the counts of one finished search to the totals and to this
+     * thread's query.
+     */
+    static void searched(int settledCount, long relaxedCount, int pushCount, int loweredCount) {
+        if (!enabled)
+            return;
+        searches.increment();
+        settled.add(settledCount);
+        relaxed.add(relaxedCount);
+        pushes.add(pushCount);
+        lowered.add(loweredCount);
+        Query q = CURRENT.get();
+        q.searches++;
+        q.settled += settledCount;
+        q.relaxed += relaxedCount;
+        q.pushes += pushCount;
+        q.lowered += loweredCount;
+    }
+
+    /**
+     * Count a route of the given number of vertices read out of a
+     * tree or table.
+     */
+    static void route(int vertices) {
+        if (!enabled)
+            return;
+        routes.record(vertices);
+        CURRENT.get().routeVertices += vertices;
+    }
+
+    public static synchronized void clear() {
+        queries.reset();
+        searches.reset();
+        settled.reset();
+        relaxed.reset();
+        pushes.reset();
+        lowered.reset();
+        settledPerQuery.reset();
+        routes.reset();
+        for (Histogram h : phases)
+            h.reset();
+    }
+
+    public static String summary() {
+        long n = searches.sum();
+        StringBuilder s = new StringBuilder();
+        s.append(String.format(Locale.ROOT, "search metrics: %d queries, %d searches settled %d vertices "
+                        + "(%.1f each), relaxed %d edges, %d heap pushes, %d decrease-keys",
+                queries.sum(), n, settled.sum(), n == 0 ? 0.0 : (double) settled.sum() / n,
+                relaxed.sum(), pushes.sum(), lowered.sum()));
+        s.append("\n  vertices settled per query: ").append(spread(settledPerQuery, 1));
+        s.append("\n  route vertices: ").append(routes.count()).append(" routes, ").append(spread(routes, 1));
+        for (Phase p : Phase.values()) {
+            Histogram h = phases[p.ordinal()];
+            if (h.count() > 0)
+                s.append("\n  ").append(p.name().toLowerCase(Locale.ROOT)).append(" us: ")
+                        .append(h.count()).append(" times, ").append(spread(h, 1000));
+        }
+        return s.toString();
+    }
+
+    private static String spread(Histogram h, long unit) {
+        return String.format(Locale.ROOT, "mean %.1f, p50 %d, p90 %d, p99 %d, max %d",
+                h.mean() / unit, h.percentile(50) / unit, h.percentile(90) / unit,
+                h.percentile(99) / unit, h.max() / unit);
+    }
+
+    // The MBean view of the totals
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    public long getVerticesSettled() {
+        return settled.sum();
+    }
+
+    public long getEdgesRelaxed() {
+        return relaxed.sum();
+    }
+
+    public long getHeapPushes() {
+        return pushes.sum();
+    }
+
+    public long getDecreaseKeys() {
+        return lowered.sum();
+    }
+
+    public long getRoutesBuilt() {
+        return routes.count();
+    }
+
+    /**
+     * Latency of phase ("search", "route", "plan" or "print") that
+     * percentile percent of its times are within.
+     */
+    public long latencyMicros(String phase, double percentile) {
+        Histogram h = phases[Phase.valueOf(phase.toUpperCase(Locale.ROOT)).ordinal()];
+        return TimeUnit.NANOSECONDS.toMicros(h.percentile(percentile));
+    }
+
+    public String getSummary() {
+        return summary();
+    }
+
+    public void reset() {
+        clear();
+    }
+
+    // Counts of the query open on one thread.
+    private static class Query {
+        int searches;
+        long settled;
+        long relaxed;
+        long pushes;
+        long lowered;
+        long routeVertices;
+        QueryEvent event;               // Open JFR event, or null
+
+        void clear() {
+            searches = 0;
+            settled = 0;
+            relaxed = 0;
+            pushes = 0;
+            lowered = 0;
+            routeVertices = 0;
+            event = null;
+        }
+    }
+
+    @Name("taxi.Query")
+    @Label("Taxi Query")
+    @Category("Taxi Simulator")
+    static class QueryEvent extends Event {
+        @Label("Query")
+        String query;
+        @Label("Searches")
+        int searches;
+        @Label("Vertices Settled")
+        long settled;
+        @Label("Edges Relaxed")
+        long relaxed;
+        @Label("Heap Pushes")
+        long pushes;
+        @Label("Decrease-Keys")
+        long lowered;
+        @Label("Route Vertices")
+        long routeVertices;
+    }
+}
@@ -0,0 +1,23 @@
+// What SearchMetrics shows over JMX, as "taxi:type=SearchMetrics".
+// Times are in microseconds.
+public interface SearchMetricsMBean {
+    long getQueries();
+
+    long getSearches();
+
+    long getVerticesSettled();
+
+    long getEdgesRelaxed();
+
+    long getHeapPushes();
+
+    long getDecreaseKeys();
+
+    long getRoutesBuilt();
+
+    long latencyMicros(String phase, double percentile);
+
+    String getSummary();
+
+    void reset();
+}
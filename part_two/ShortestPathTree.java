@@ -0,0 +1,153 @@
+
+// Result of one single-source search over a CsrGraph: per-vertex cost,
+// predecessor and number of equal-cost shortest paths.
+//
+// For a forward search every path starts at source; for a reverse
+// search (over reversed edges) every path ends at source, and prev(v)
+// is then the vertex after v on the way to source.
+//
+// A search that stopped early only guarantees the results of vertices
+// with dist(v) <= bound; further out, dist(v) is just an upper bound.
+//
+// A tree fresh from a search reads straight from the SearchSpace the
+// search ran in, so it is only valid until that space is reset for
+// another search; snapshot() copies it into arrays of its own, which
+// repair() can bring up to date after an edge cost changes.
+class ShortestPathTree {
+    final CsrGraph graph;
+    final int source;
+    final boolean reverse;
+    final double bound;         // Radius within which results are final
+    private final SearchSpace space;    // Backing space, null for a snapshot
+    private final int generation;
+    private final double[] dist;        // Snapshot results, null for a view
+    private final int[] prev;
+    private final int[] paths;
+
+    ShortestPathTree(CsrGraph graph, int source, boolean reverse, double bound,
+                     SearchSpace space) {
+        this.graph = graph;
+        this.source = source;
+        this.reverse = reverse;
+        this.bound = bound;
+        this.space = space;
+        this.generation = space.generation();
+        this.dist = null;
+        this.prev = null;
+        this.paths = null;
+    }
+
+    private ShortestPathTree(CsrGraph graph, int source, boolean reverse, double bound,
+                             double[] dist, int[] prev, int[] paths) {
+        this.graph = graph;
+        this.source = source;
+        this.reverse = reverse;
+        this.bound = bound;
+        this.space = null;
+        this.generation = 0;
+        this.dist = dist;
+        this.prev = prev;
+        this.paths = paths;
+    }
+
+    /**
+     * A complete tree from results computed elsewhere, taking over the
+     * arrays.
+     */
+    static ShortestPathTree snapshot(CsrGraph graph, int source, boolean reverse,
+                                     double[] dist, int[] prev, int[] paths) {
+        return new ShortestPathTree(graph, source, reverse, ShortestPaths.INFINITY, dist, prev, paths);
+    }
+
+    /**
+     * Return a copy of this tree that no later search can disturb.
+     */
+    public ShortestPathTree snapshot() {
+        if (space == null)
+            return this;
+        check();
+        int n = graph.vertexCount();
+        double[] d = new double[n];
+        int[] p = new int[n];
+        int[] c = new int[n];
+        for (int v = 0; v < n; v++) {
+            d[v] = space.dist(v);
+            p[v] = space.prev(v);
+            c[v] = space.paths(v);
+        }
+        return new ShortestPathTree(graph, source, reverse, bound, d, p, c);
+    }
+
+    /**
+     * Bring this snapshot up to date after the cost of the edges from
+     * u to w changed from old; return the number of vertices recounted.
+     */
+    public int repair(int u, int w, double old) {
+        if (space != null)
+            throw new IllegalStateException("Only a snapshot can be repaired");
+        return new TreeRepair(graph, source, reverse, dist, prev, paths, 0, 1).edgeChanged(u, w, old);
+    }
+
+    /**
+     * Bytes held by a snapshot of a tree over n vertices.
+     */
+    static long snapshotBytes(int n) {
+        return 16L * n + 64;
+    }
+
+    /**
+     * Cost between v and source.
+     */
+    public double dist(int v) {
+        if (space == null)
+            return dist[v];
+        check();
+        return space.dist(v);
+    }
+
+    /**
+     * Neighbour of v towards source, -1 if none.
+     */
+    public int prev(int v) {
+        if (space == null)
+            return prev[v];
+        check();
+        return space.prev(v);
+    }
+
+    /**
+     * Number of equal-cost shortest paths between v and source.
+     */
+    public int paths(int v) {
+        if (space == null)
+            return paths[v];
+        check();
+        return space.paths(v);
+    }
+
+    public boolean reachable(int v) {
+        return dist(v) != ShortestPaths.INFINITY;
+    }
+
+    /**
+     * Vertices on the shortest path between source and v, in the
+     * order they are driven. The path is known to exist.
+     */
+    public int[] route(int v) {
+        int length = 0;
+        for (int u = v; u != -1; u = prev(u))
+            length++;
+        int[] route = new int[length];
+        SearchMetrics.route(length);
+        int i = reverse ? 0 : length - 1;
+        int step = reverse ? 1 : -1;
+        for (int u = v; u != -1; u = prev(u), i += step)
+            route[i] = u;
+        return route;
+    }
+
+    private void check() {
+        if (space != null && space.generation() != generation)
+            throw new IllegalStateException("Search space was reused by a later search");
+    }
+}
@@ -0,0 +1,313 @@
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// Shortest-path searches over an immutable CsrGraph.
+//
+// The graph is never written to; all search state lives in a
+// SearchSpace, by default the calling thread's own, so any number of
+// threads can query one shared graph at once. Trees returned from a
+// search are views on its space and stay valid until the next search
+// in that space.
+//
+// ******************PUBLIC OPERATIONS**********************
+// ShortestPathTree dijkstra( CsrGraph g, int s, boolean reverse )
+//                   --> Single-source weighted, optionally over
+//                       reversed edges (single-destination)
+// ShortestPathTree nearest( CsrGraph g, int s, boolean reverse, int[] t )
+//                   --> Same, stopping once the members of t
+//                       closest to s (with all ties) are settled
+// ShortestPathTree nearest( CsrGraph g, int s, boolean reverse,
+//                           IntPredicate goal, SearchSpace space )
+//                   --> Same, for the vertices goal accepts
+// ShortestPathTree pointToPoint( CsrGraph g, int s, int t )
+//                   --> Same, stopping once t is settled
+// Route bidirectional( CsrGraph g, int s, int t )
+//                   --> Cost, path count and route from s to t,
+//                       searching from both ends
+// Each tree-returning search also takes an explicit SearchSpace.
+// Every search reports its counts to SearchMetrics when it ends.
+// ******************ERRORS*********************************
+// GraphException is thrown if the graph has negative edges.
+class ShortestPaths {
+    public static final double INFINITY = Double.MAX_VALUE;
+
+    private ShortestPaths() {
+    }
+
+    /**
+     * Single-source weighted shortest-path algorithm. (Dijkstra)
+     * using an indexed 4-ary heap with decrease-key, or a radix heap
+     * when every cost is a whole number.
+     * With reverse set, edges are followed backwards, so the tree
+     * holds the cost from every vertex to start.
+     */
+    public static ShortestPathTree dijkstra(CsrGraph g, int start, boolean reverse) {
+        return dijkstra(g, start, reverse, SearchSpace.local(g, 0));
+    }
+
+    public static ShortestPathTree dijkstra(CsrGraph g, int start, boolean reverse,
+                                            SearchSpace space) {
+        return search(new Frontier(g, start, reverse, space), null);
+    }
+
+    /**
+     * Dijkstra from start that stops as soon as the closest of the
+     * target vertices is settled, plus every target at the same cost,
+     * so their costs, path counts and routes are final. Costs of
+     * vertices further out than that are left as upper bounds.
+     */
+    public static ShortestPathTree nearest(CsrGraph g, int start, boolean reverse, int[] targets) {
+        return nearest(g, start, reverse, targets, SearchSpace.local(g, 0));
+    }
+
+    public static ShortestPathTree nearest(CsrGraph g, int start, boolean reverse, int[] targets,
+                                           SearchSpace space) {
+        Frontier f = new Frontier(g, start, reverse, space);
+        for (int t : targets)
+            space.mark(t);
+        return search(f, space::marked);
+    }
+
+    /**
+     * Like nearest, with the targets being the vertices goal accepts,
+     * for target sets too large or changeable to list. The first goal
+     * settled is the first in space.order that goal accepts.
+     */
+    public static ShortestPathTree nearest(CsrGraph g, int start, boolean reverse, IntPredicate goal,
+                                           SearchSpace space) {
+        return search(new Frontier(g, start, reverse, space), goal);
+    }
+
+    /**
+     * Dijkstra from start that stops once dest is settled.
+     */
+    public static ShortestPathTree pointToPoint(CsrGraph g, int start, int dest) {
+        return pointToPoint(g, start, dest, SearchSpace.local(g, 0));
+    }
+
+    public static ShortestPathTree pointToPoint(CsrGraph g, int start, int dest,
+                                                SearchSpace space) {
+        return nearest(g, start, false, new int[] { dest }, space);
+    }
+
+    /**
+     * Settle vertices until the first one goal accepts is settled, with
+     * every vertex tied with it; a null goal settles them all.
+     */
+    private static ShortestPathTree search(Frontier f, IntPredicate goal) {
+        SearchSpace space = f.space;
+        double bound = INFINITY;    // Cost of the nearest goal, once settled
+        int nodesSeen = 0;
+        while (nodesSeen < space.capacity()) {
+            double top = f.top();
+            if (top == INFINITY || top > bound) // every goal tied with the nearest is done
+                break;
+            int v = f.settleNext();
+            nodesSeen++;
+            if (goal != null && bound == INFINITY && goal.test(v))
+                bound = space.dist[v];
+        }
+        f.counted();
+        return f.tree(bound);
+    }
+
+    /**
+     * Bidirectional Dijkstra: a forward search from start and a
+     * backward search from dest, always advancing the one with the
+     * smaller frontier, until the two frontiers are at least the best
+     * meeting cost apart.
+     *
+     * Every shortest path then has exactly one edge (u, w) leaving the
+     * part of the forward search that is settled below the forward
+     * frontier, and both ends of that edge have final costs and path
+     * counts, so the paths through it number paths(u) * paths(w).
+     */
+    public static Route bidirectional(CsrGraph g, int start, int dest) {
+        if (start == dest || g.minWeight <= 0) // zero-cost edges break the crossing argument
+            return Route.of(pointToPoint(g, start, dest), dest);
+
+        Frontier fwd = new Frontier(g, start, false, SearchSpace.local(g, 0));
+        Frontier bwd = new Frontier(g, dest, true, SearchSpace.local(g, 1));
+        fwd.other = bwd;
+        bwd.other = fwd;
+        double topF, topB;
+        while (true) {
+            topF = fwd.top();
+            topB = bwd.top();
+            if (topF == INFINITY || topB == INFINITY) {
+                fwd.counted();
+                bwd.counted();
+                if (topF == INFINITY) // forward tree is complete
+                    return Route.of(fwd.tree(INFINITY), dest);
+                return Route.of(bwd.tree(INFINITY), start);
+            }
+            double meet = Math.min(fwd.meet, bwd.meet);
+            if (meet != INFINITY && topF + topB >= meet)
+                break;
+            if (topF <= topB)
+                fwd.settleNext();
+            else
+                bwd.settleNext();
+        }
+        fwd.counted();
+        bwd.counted();
+
+        // Count the paths across the edges leaving the settled forward ball
+        SearchSpace fs = fwd.space, bs = bwd.space;
+        double best = INFINITY;
+        long count = 0;
+        int meetFrom = -1, meetTo = -1;
+        for (int i = 0; i < fs.settledCount; i++) {
+            int u = fs.order[i];
+            double du = fs.dist[u];
+            if (du >= topF)
+                continue;
+            for (int e = g.offsets[u]; e < g.offsets[u + 1]; e++) {
+                int w = g.targets[e];
+                double dw = du + g.weights[e];
+                double rest = bs.dist(w);
+                if (dw < topF || rest == INFINITY)
+                    continue;
+                double total = dw + rest;
+                if (total < best) {
+                    best = total;
+                    count = 0;
+                    meetFrom = u;
+                    meetTo = w;
+                }
+                if (total == best)
+                    count = Math.min(Integer.MAX_VALUE, count + (long) fs.paths[u] * bs.paths[w]);
+            }
+        }
+        if (meetFrom < 0)
+            return new Route(start, dest, INFINITY, 0, null);
+
+        int[] head = fwd.tree(topF).route(meetFrom);
+        int[] tail = bwd.tree(topB).route(meetTo);
+        int[] vertices = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, vertices, head.length, tail.length);
+        return new Route(start, dest, best, (int) count, vertices);
+    }
+
+    /**
+     * Add two path counts, saturating instead of overflowing;
+     * only "one" versus "more than one" is ever reported.
+     */
+    static int addPaths(int a, int b) {
+        int sum = a + b;
+        return sum < 0 ? Integer.MAX_VALUE : sum;
+    }
+
+    /**
+     * Multiply two path counts, saturating like addPaths.
+     */
+    static int mulPaths(int a, int b) {
+        long product = (long) a * b;
+        return product > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) product;
+    }
+
+    // One Dijkstra search, advanced one vertex at a time, keeping its
+    // tentative costs, predecessors, path counts and heap in a
+    // SearchSpace. The heap holds each reached, unsettled vertex once;
+    // on a graph of whole-number costs it is the space's radix heap.
+    private static class Frontier {
+        final CsrGraph graph;
+        final int start;
+        final boolean reverse;
+        final int[] offsets;
+        final int[] targets;
+        final double[] weights;
+        final SearchSpace space;
+        final double[] dist;
+        final int[] prev;
+        final int[] paths;
+        final VertexQueue heap;
+        Frontier other;             // Opposite search, when bidirectional
+        double meet = INFINITY;     // Cheapest path seen through both searches
+        long relaxed = 0;           // Counts for SearchMetrics
+        int pushes = 0;
+        int lowered = 0;
+
+        Frontier(CsrGraph g, int start, boolean reverse, SearchSpace space) {
+            if (g.minWeight < 0)
+                throw new GraphException("Graph has negative edges");
+            this.graph = g;
+            this.start = start;
+            this.reverse = reverse;
+            offsets = reverse ? g.inOffsets : g.offsets;
+            targets = reverse ? g.sources : g.targets;
+            weights = reverse ? g.inWeights : g.weights;
+            this.space = space;
+            dist = space.dist;
+            prev = space.prev;
+            paths = space.paths;
+            heap = g.integral ? space.radix() : space.heap;
+
+            space.reset();
+            space.touch(start);
+            dist[start] = 0;
+            paths[start] = 1;
+            heap.add(start);
+            pushes++;
+        }
+
+        /**
+         * Cost of the next vertex to settle, or INFINITY if none.
+         */
+        double top() {
+            return heap.isEmpty() ? INFINITY : heap.peekKey();
+        }
+
+        /**
+         * Settle the closest unsettled vertex and relax its edges.
+         * Only valid after top() returned a finite cost.
+         */
+        int settleNext() {
+            int v = heap.poll();
+            space.order[space.settledCount++] = v;
+
+            double dv = dist[v];
+            relaxed += offsets[v + 1] - offsets[v];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                double dw = dv + weights[e];
+                space.touch(w);
+
+                if (dist[w] > dw) {
+                    dist[w] = dw;
+                    prev[w] = v;
+                    if (heap.contains(w)) {
+                        heap.decreased(w);
+                        lowered++;
+                    }
+                    else {
+                        heap.add(w);
+                        pushes++;
+                    }
+                    paths[w] = paths[v];
+                }
+                else if (dist[w] == dw) {
+                    paths[w] = addPaths(paths[w], paths[v]);
+                }
+                if (other != null) {
+                    double rest = other.space.dist(w);
+                    if (rest != INFINITY)
+                        meet = Math.min(meet, dw + rest);
+                }
+            }
+            return v;
+        }
+
+        /**
+         * Report this search's counts; called once, when it ends.
+         */
+        void counted() {
+            SearchMetrics.searched(space.settledCount, relaxed, pushes, lowered);
+        }
+
+        ShortestPathTree tree(double bound) {
+            return new ShortestPathTree(graph, start, reverse, bound, space);
+        }
+    }
+}
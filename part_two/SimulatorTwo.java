@@ -1,6 +1,8 @@
 
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
 import java.util.Queue;
@@ -9,158 +11,313 @@ import java.util.LinkedList;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
-import java.util.Scanner;
-import java.util.StringTokenizer;
 import java.util.*;
 
-// Used to signal violations of preconditions for
-// various shortest path algorithms.
-class GraphException extends RuntimeException {
+// Graph class: evaluate shortest paths.
+//
+// CONSTRUCTION: with no parameters.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void addEdge( String v, String w, double cvw )
+// --> Add additional edge
+// void updateEdge( String v, String w, double cvw )
+// --> Change the cost of edge v -> w in place
+// void removeEdge( String v, String w ) --> Close edge v -> w
+// void printPath( String w ) --> Print path after alg is run
+// void dijkstra( String s ) --> Single-source weighted
+// ******************ERRORS*********************************
+// Some error checking is performed to make sure graph is ok,
+// and to make sure graph satisfies properties needed by each
+// algorithm. Exceptions are thrown if errors are detected.
+//
+// Edges are collected by a CsrGraph.Builder and frozen into an
+// immutable CsrGraph the first time a search runs after addEdge.
+// Searches themselves live in ShortestPaths. dijkstra, getDistance and
+// printPath share this instance's SearchSpace, so only one thread may
+// call them; processRequest only reads the frozen graph and searches in
+// per-thread spaces, so once graph() has been built it can run for many
+// clients at once.
+
+public class SimulatorTwo {
+    public static final double INFINITY = ShortestPaths.INFINITY;
+    public static final int DEFAULT_CACHE_MB = 64;
+    private CsrGraph.Builder builder; // Edges added so far, null if none
+    private CsrGraph graph;         // Frozen view of builder, null if stale
+    private SearchSpace space;      // Search state owned by this instance
+    private ShortestPathTree tree;  // Result of the last dijkstra
+    private long cacheBytes = DEFAULT_CACHE_MB << 20;
+    private boolean reorder = true; // Renumber large graphs for locality
+    private TreeCache cache;        // Trees of frequent sources
+    private DispatchPlanner planner;
+    private Router router;          // Hierarchy or landmarks, null for Dijkstra
+    private Route route;            // Result of the last getDistance through router
+    private TaxiVoronoi fleet;      // Nearest taxi of every vertex, null unless built
+
     /**
-     * 
+     * Add a new edge to the graph.
      */
-    private static final long serialVersionUID = 1L;
+    public void addEdge(String sourceName, String destName, double cost) {
+        builder().addEdge(sourceName, destName, cost);
+        graph = null;
+        tree = null;
+    }
 
-    public GraphException(String name) {
-        super(name);
+    /**
+     * Change the cost of every edge from sourceName to destName, as
+     * when traffic builds up or clears. The graph is not rebuilt: cached
+     * trees and distance tables are repaired where they are, and only
+     * a contraction hierarchy or landmarks are discarded.
+     */
+    public void updateEdge(String sourceName, String destName, double cost) {
+        CsrGraph g = graph();
+        int v = g.id(sourceName);
+        int w = g.id(destName);
+        if (v < 0 || w < 0)
+            throw new NoSuchElementException("Edge vertex not found");
+        double old = g.setWeight(v, w, cost);
+        builder = null;     // Reopened from the graph, with the new cost, if needed
+        tree = null;
+        route = null;
+        if (router != null) {
+            router = null;
+            planner = planner.withRouter(null);
+        }
+        cache.repair(v, w, old);
+        planner.repair(v, w, old);
+        if (fleet != null)
+            fleet.repair(v, w, old);
     }
-}
 
-// Represents an edge in the graph.
-class Edge {
-    public Vertex dest; // Second vertex in Edge
-    public double cost; // Edge cost
+    /**
+     * Close every edge from sourceName to destName; updateEdge can
+     * open it again.
+     */
+    public void removeEdge(String sourceName, String destName) {
+        updateEdge(sourceName, destName, CsrGraph.NO_EDGE);
+    }
 
-    public Edge(Vertex d, double c) {
-        dest = d;
-        cost = c;
+    /**
+     * Read lines adjacency lines ("source {dest cost}*") of the input
+     * format into the graph; returns the number of edges read.
+     */
+    public int readEdges(InputReader in, int lines) {
+        if (builder == null && graph == null)
+            builder = new CsrGraph.Builder(lines, 4 * lines);
+        CsrGraph.Builder b = builder();
+        graph = null;
+        tree = null;
+        return GraphLoader.readEdges(in, lines, b);
     }
-}
 
-// Represents an entry in the priority queue for Dijkstra's algorithm.
-class Path implements Comparable<Path> {
-    public Vertex dest; // w
-    public double cost; // d(w)
-    public List<Vertex> pathNodes; // List of vertices in the path
+    /**
+     * Replace the graph with the one saved in a binary snapshot.
+     */
+    public void loadSnapshot(String file) throws IOException {
+        builder = null;
+        useGraph(GraphSnapshot.open(Paths.get(file)));
+    }
 
-    public Path(Vertex d, double c) {
-        dest = d;
-        cost = c;
+    /**
+     * The builder collecting edges, reopened from the frozen graph
+     * if that came from a snapshot.
+     */
+    private CsrGraph.Builder builder() {
+        if (builder == null)
+            builder = graph == null ? new CsrGraph.Builder() : new CsrGraph.Builder(graph);
+        return builder;
     }
 
-    public int compareTo(Path rhs) {
-        double otherCost = rhs.cost;
+    /**
+     * Return the CSR view of the graph, rebuilding it if edges
+     * were added since the last call.
+     */
+    public CsrGraph graph() {
+        if (graph == null)
+            useGraph(reorder ? VertexOrder.local(builder().build()) : builder().build());
+        return graph;
+    }
 
-        return cost < otherCost ? -1 : cost > otherCost ? 1 : 0;
+    /**
+     * Make g the current graph and set up searches over it.
+     */
+    private void useGraph(CsrGraph g) {
+        graph = g;
+        tree = null;
+        router = null;
+        route = null;
+        space = new SearchSpace(graph.vertexCount());
+        if (cache == null)
+            cache = new TreeCache(graph, cacheBytes);
+        else
+            cache.invalidate(graph);
+        planner = new DispatchPlanner(graph, cache);
+        fleet = null;
     }
-}
 
-// Represents a vertex in the graph.
-class Vertex {
-    public String name; // Vertex name
-    public List<Edge> adj; // Adjacent vertices
-    public double dist; // Cost
-    public Vertex prev; // Previous vertex on shortest path
-    public int scratch;// Extra variable used in algorithm
-    public int paths;
+    /**
+     * Return the planner for client requests on the current graph.
+     */
+    public DispatchPlanner planner() {
+        graph();
+        return planner;
+    }
 
-    public Vertex(String nm) {
-        name = nm;
-        adj = new LinkedList<Edge>();
-        reset();
-        paths = 0;
+    /**
+     * Precompute distance tables from the pickup vertices and into the
+     * drop-off vertices, so requests among them are answered by table
+     * lookups alone. Returns a report of the tables' memory and build
+     * time. Adding an edge afterwards discards the tables.
+     */
+    public String precompute(List<String> pickups, List<String> dropOffs, int threads) {
+        CsrGraph g = graph();
+        DistanceTable from = DistanceTable.build(g, knownIds(pickups), false, threads);
+        DistanceTable into = DistanceTable.build(g, knownIds(dropOffs), true, threads);
+        planner = planner.withTables(from, into);
+        return from.stats() + "\n" + into.stats();
     }
 
-    public void reset()
-    {
-        dist = SimulatorTwo.INFINITY;
-        prev = null;
-        scratch = 0;
+    /**
+     * Label every vertex with its nearest taxi (see TaxiVoronoi), so a
+     * client's pickup leg is an array read; taxi events and road
+     * changes then relabel only the vertices they affect. Returns a
+     * report of the build. A taxi off the graph leaves every client
+     * unhelped, so then nothing is built. Adding an edge afterwards
+     * discards the labels.
+     */
+    public String voronoi(List<String> taxis) {
+        CsrGraph g = graph();
+        int[] at = knownIds(taxis);
+        if (at.length < taxis.size())
+            return "taxi voronoi: not built, a taxi is not on the graph";
+        fleet = new TaxiVoronoi(g, at);
+        return fleet.stats();
     }
 
+    /**
+     * Keep the taxi labels, if any, in step with a taxi leaving from
+     * and one arriving at to, either null for none.
+     */
+    private void taxiMoved(String from, String to) {
+        if (fleet == null)
+            return;
+        if (from != null)
+            fleet.remove(graph.id(from));
+        if (to != null)
+            fleet.add(graph.id(to));
+    }
 
-}
+    /**
+     * Build a contraction hierarchy of the graph on threads threads
+     * and answer getDistance and client requests with it. Returns a
+     * report of its size and build time. Graphs with zero-cost edges
+     * keep Dijkstra, whose path counts the hierarchy cannot match.
+     * Adding an edge afterwards discards the hierarchy.
+     */
+    public String contract(int threads) {
+        ContractionHierarchy h = ContractionHierarchy.build(graph(), threads);
+        if (!h.countsPaths())
+            return "contraction hierarchy not used: graph has zero-cost edges";
+        return useRouter(h);
+    }
 
-// Graph class: evaluate shortest paths.
-//
-// CONSTRUCTION: with no parameters.
-//
-// ******************PUBLIC OPERATIONS**********************
-// void addEdge( String v, String w, double cvw )
-// --> Add additional edge
-// void printPath( String w ) --> Print path after alg is run
-// void dijkstra( String s ) --> Single-source weighted
-// ******************ERRORS*********************************
-// Some error checking is performed to make sure graph is ok,
-// and to make sure graph satisfies properties needed by each
-// algorithm. Exceptions are thrown if errors are detected.
+    /**
+     * Pick count landmarks, search their trees on threads threads and
+     * answer getDistance and client requests by A* with their bounds.
+     * Returns a report of the tables' size and build time. Graphs whose
+     * costs are not positive integers keep Dijkstra. Adding an edge
+     * afterwards discards the landmarks.
+     */
+    public String landmarks(int count, int threads) {
+        if (!Landmarks.fits(graph()))
+            return "landmarks not used: costs are not all positive integers";
+        return useRouter(Landmarks.build(graph, count, threads));
+    }
 
-public class SimulatorTwo {
-    public static final double INFINITY = Double.MAX_VALUE;
-    private Map<String, Vertex> vertexMap = new HashMap<String, Vertex>();
+    private String useRouter(Router r) {
+        router = r;
+        route = null;
+        planner = planner.withRouter(r);
+        return r.stats();
+    }
+
+    private int[] knownIds(List<String> names) {
+        return names.stream().mapToInt(graph::id).filter(v -> v >= 0).toArray();
+    }
 
     /**
-     * Add a new edge to the graph.
+     * Set the memory budget of the tree cache; 0 turns it off.
+     * Must be called before the first search.
      */
-    public void addEdge(String sourceName, String destName, double cost) {
-        Vertex v = getVertex(sourceName);
-        Vertex w = getVertex(destName);
-        v.adj.add(new Edge(w, cost));
+    public void setCacheBytes(long bytes) {
+        cacheBytes = bytes;
+    }
+
+    /**
+     * Whether graphs built from edges are renumbered for cache
+     * locality (see VertexOrder); on by default. Snapshots keep the
+     * order they were saved in, which GraphSnapshot renumbers the same
+     * way. Must be called before the first search.
+     */
+    public void setReorder(boolean on) {
+        reorder = on;
+    }
+
+    /**
+     * Return the cache of complete trees kept for this graph.
+     */
+    public TreeCache treeCache() {
+        graph();
+        return cache;
     }
 
     /**
      * Driver routine to handle unreachables and print total cost.
-     * It calls recursive routine to print shortest path to
+     * It calls routine to print shortest path to
      * destNode after a shortest path algorithm has run.
      */
     public void printPath(String destName) {
     
-        Vertex w = vertexMap.get(destName);
-        if (w == null) {
+        int w = graph().id(destName);
+        if (w < 0) {
             throw new NoSuchElementException("Destination vertex not found");
             }
-        else if (w.dist == INFINITY)
-            System.out.println(destName + " is unreachable");
+        long begun = SearchMetrics.begin();
+        ResultWriter out = new ResultWriter(System.out, System.err, 1024);
+        if (route != null && route.to == w)
+            printPath(graph, route, out);
+        else if (tree == null)
+            out.println(destName + " is unreachable");
         else {
-            System.out.print("");
-            printPath(w);
-            System.out.println();
+            if (tree.dist(w) > tree.bound) // search stopped short of w
+                tree = fullTree(graph, tree.source);
+            printPath(graph, Route.of(tree, w), out);
         }
+        out.flush();
+        SearchMetrics.phase(SearchMetrics.Phase.PRINT, begun);
+        SearchMetrics.end("printPath", begun);
     }
 
     /**
-     * If vertexName is not present, add it to vertexMap.
-     * In either case, return the Vertex.
+     * Print the vertices of route, or that its end is unreachable.
      */
-    private Vertex getVertex(String vertexName) {
-        Vertex v = vertexMap.get(vertexName);
-        if (v == null) {
-            v = new Vertex(vertexName);
-            vertexMap.put(vertexName, v);
+    private static void printPath(CsrGraph g, Route route, ResultWriter out) {
+        if (!route.reachable()) {
+            out.println(g.name(route.to) + " is unreachable");
+            return;
         }
-        return v;
+        out.path(g, route.vertices);
     }
 
     /**
-     * Recursive routine to print shortest path to dest
-     * after running shortest path algorithm. The path
-     * is known to exist.
+     * Print the cost if several shortest paths tie, else the path.
      */
-    private void printPath(Vertex dest) {
-        if (dest.prev != null) {
-            printPath(dest.prev);
-            System.out.print(" ");
+    private static void printLeg(CsrGraph g, Route route, ResultWriter out) {
+        if (route.paths > 1) {
+            out.println("multiple solutions cost "+Double.valueOf(route.cost).intValue());
+        }
+        else { 
+            printPath(g, route, out);
         }
-        System.out.print(dest.name);
-    }
-
-    /**
-     * Initializes the vertex output info prior to running
-     * any shortest path algorithm.
-     */
-    private void clearAll() {
-        for (Vertex v : vertexMap.values())
-            v.reset();
     }
     
     /**
@@ -168,67 +325,70 @@ public class SimulatorTwo {
      * using priority queues based on the binary heap
      */
     public void dijkstra(String startName) {
-        PriorityQueue<Path> pq = new PriorityQueue<Path>();
-       
-
-        Vertex start = vertexMap.get(startName);
-        if (start == null) {
+        CsrGraph g = graph();
+        int start = g.id(startName);
+        if (start < 0) {
             throw new NoSuchElementException("Start vertex not found");
         }
-        
-        clearAll();
-        pq.add(new Path(start, 0));   /// changedd 
-        start.dist = 0;
-        start.paths = 1;
-
-        int nodesSeen = 0;
-        while (!pq.isEmpty() && nodesSeen < vertexMap.size()) {
-            Path vrec = pq.remove();
-            Vertex v = vrec.dest;
-            if (v.scratch != 0) // already processed v
-                continue;
-
-            v.scratch = 1;
-            nodesSeen++;
-
-            for (Edge e : v.adj) {
-                Vertex w = e.dest;
-                double cvw = e.cost;
-
-                if (cvw < 0)
-                    throw new GraphException("Graph has negative edges");
+        long begun = SearchMetrics.begin();
+        route = null;
+        if (cache.fits(1))
+            tree = cache.tree(start, false);
+        else
+            tree = fullTree(g, start);
+        SearchMetrics.phase(SearchMetrics.Phase.SEARCH, begun);
+        SearchMetrics.end("dijkstra", begun);
+    }
 
-                if (w.dist > v.dist + cvw) {
-                    w.dist = v.dist + cvw;
-                    w.prev = v;
-                    pq.add(new Path(w, w.dist));
-                    w.paths = v.paths;               
-                }
-                else if (w.dist == v.dist + cvw) {
-                     w.paths += v.paths;
-                }
-            }
-        }
-        
+    /**
+     * Complete tree of start: on all cores for a graph large enough to
+     * gain (see DeltaStepping), else in this instance's space.
+     */
+    private ShortestPathTree fullTree(CsrGraph g, int start) {
+        if (DeltaStepping.pays(g))
+            return DeltaStepping.tree(g, start, false);
+        return ShortestPaths.dijkstra(g, start, false, space);
     }
     
     
     /**
      * Calculate the distance between two nodes using Dijkstra's algorithm.
+     * A cached tree from the source answers without a search, then a
+     * contraction hierarchy or landmarks if either was built; otherwise
+     * the search stops as soon as the destination is settled.
      * 
      * @param sourceName The name of the source node.
      * @param destName   The name of the destination node.
-     * @return The distance between the source and destination nodes.
+     * @return The number of shortest paths and the distance between
+     *         the source and destination nodes.
      */
     public double[] getDistance(String startName, String destName) {
-        dijkstra(startName); 
+        CsrGraph g = graph();
+        int start = g.id(startName);
+        if (start < 0) {
+            throw new NoSuchElementException("Start vertex not found");
+        }
         double result[] = new double[2];
-        result[0] = vertexMap.get(destName).paths;
-        Vertex dest = vertexMap.get(destName); // Get the destination vertex
-        if (dest == null) {
+        int dest = g.id(destName); // Get the destination vertex
+        if (dest < 0) {
             throw new NoSuchElementException("Destination vertex not found");
         }
-        result[1] = dest.dist; // Distance from source to destination
+        long begun = SearchMetrics.begin();
+        route = null;
+        tree = cache.peek(start, false);
+        if (tree == null && router != null) {
+            route = router.route(start, dest);
+            result[0] = route.paths;
+            result[1] = route.cost;
+        }
+        else {
+            if (tree == null)
+                tree = ShortestPaths.pointToPoint(g, start, dest, space);
+            result[0] = tree.paths(dest);
+            result[1] = tree.dist(dest); // Distance from source to destination
+        }
+        SearchMetrics.phase(SearchMetrics.Phase.ROUTE, begun);
+        SearchMetrics.end("getDistance", begun);
          
         
         return result;
@@ -237,74 +397,203 @@ public class SimulatorTwo {
 
     /**
      * Process a request; return false if end of file.
+     * One search into the client, stopped at the nearest taxis, and
+     * one search out of it, stopped at the requested shop.
      */
     public static boolean processRequest(String client, String endShop, SimulatorTwo g, List<String> taxis) {
+        ResultWriter out = ResultWriter.system();
+        boolean helped = processRequest(client, endShop, g, taxis, out);
+        out.flush();
+        return helped;
+    }
+
+    /**
+     * Process a request, printing to out; the caller flushes it.
+     */
+    public static boolean processRequest(String client, String endShop, SimulatorTwo g, List<String> taxis,
+                                         ResultWriter out) {
+        long begun = SearchMetrics.begin();
         try {
-                   
-            double minFromShop = Double.MAX_VALUE;             // Initialize the minimum distance from the shop
-            double minToShop = Double.MAX_VALUE;              // Initialize the minimum distance to the shop
-            String startShop = "";                           // Initialize the starting shop
-            List<String> usableTaxis = new ArrayList<>();   // List of usable taxis
-            
-            
-            // Find the nearest taxi to the client
-            for (String taxi: taxis) {
-               double distFromShop = g.getDistance(taxi, client)[1];      // Distance from the taxi to the client
-               double distToShop = g.getDistance(client, endShop)[1];    // Distance from the client to the shop
-               
-               // Update the nearest taxi to the client
-               if (distFromShop < minFromShop && distFromShop != g.INFINITY) {
-                  minFromShop = distFromShop;
-                  startShop = taxi;
-                  
-                  usableTaxis.clear();               // Clear the list of usable taxis
-                  usableTaxis.add(taxi);            // Add the current taxi as the only usable taxi
-               }
-               else if (distFromShop == minFromShop && distFromShop != g.INFINITY) {
-                  usableTaxis.add(taxi);     // Add another usable taxi with the same distance to the client
-               }
-            }
+            DispatchPlanner.Plan plan = g.planner()
+                  .plan(client, g.fleet, taxis, Collections.singletonList(endShop));   // Both legs for this client
+            long planned = SearchMetrics.phase(SearchMetrics.Phase.PLAN, begun);
+            List<Route> usableTaxis = plan.pickups;      // Nearest taxis, ties kept
             
             // If no usable taxis are found, throw an exception
             if (usableTaxis.size() == 0) {
                throw new NoSuchElementException("Destination vertex not found");
              }
-            System.out.println("client " +client);
+            out.println("client " +client);
             
             // Print the shortest paths for each usable taxi to the client
-            for (String taxi: usableTaxis) {
-               System.out.println("taxi " +taxi);
-               g.dijkstra(taxi);
-               double costs[] = g.getDistance(taxi, client);    // Get the costs for the path from the taxi to the client
-               if (costs[0] > 1) {
-                  System.out.println("multiple solutions cost "+Double.valueOf(costs[1]).intValue());
-               }
-               else { 
-                  g.printPath(client);
-               }
+            for (Route taxi: usableTaxis) {
+               out.println("taxi " +g.graph.name(taxi.from));
+               printLeg(g.graph, taxi, out);
             }
             
-               g.dijkstra(client);
-               System.out.println("shop "+endShop);
-               double costs[] = g.getDistance(client, endShop);
-               if (costs[0] > 1) {
-                  System.out.println("multiple solutions cost "+Double.valueOf(costs[1]).intValue());
+               out.println("shop "+endShop);
+               if (plan.dropOffs.size() == 0) {
+                  out.println(endShop + " is unreachable");     // Shop cannot be reached from the client
                }
-               else { 
-                  g.printPath(endShop);
+               else {
+                  printLeg(g.graph, plan.dropOffs.get(0), out);
                }
+               SearchMetrics.phase(SearchMetrics.Phase.PRINT, planned);
         
         // Handle the case where the destination vertex is not found 
         } catch (NoSuchElementException e) {
-            System.out.println("client " +client);
-            System.err.println("cannot be helped");
+            out.println("client " +client);
+            out.error("cannot be helped");
             return false;
         } catch (GraphException e) {
-            System.err.println(e);
+            out.error(e.toString());
+        } finally {
+            SearchMetrics.end("request", begun);
         }
         return true;
     }
 
+    /**
+     * Simulate the taxis serving count client lines of in, each
+     * "client shop [time]" with time defaulting to the line's number
+     * from 0, where a taxi is busy from being assigned until it drops
+     * its client at the shop (see FleetSimulation). Waiting clients give
+     * up after patience. The shops' distance tables are searched on
+     * threads threads. Returns the simulation's summary.
+     */
+    public String simulate(InputReader in, int count, List<String> taxis, double patience, int threads) {
+        CsrGraph g = graph();
+        int[] stands = new int[taxis.size()];
+        for (int j = 0; j < stands.length; j++) {
+            stands[j] = g.id(taxis.get(j));
+            if (stands[j] < 0)
+                throw new NoSuchElementException("Taxi vertex not found");
+        }
+        FleetSimulation fleet = new FleetSimulation(g, stands, patience, threads);
+        for (int i = 0; i < count; i++) {
+            if (!in.nextLine())
+                throw new NoSuchElementException("No line found");
+            int client = g.id(in.nextToken());
+            int shop = g.id(in.nextToken());
+            double time = in.hasMoreTokens() ? Double.parseDouble(in.nextToken()) : i;
+            fleet.request(time, client, shop);
+        }
+        return fleet.run();
+    }
+
+    /**
+     * Assign the count client lines of in, each "client shop", to taxis
+     * window clients at a time, each window with the least total
+     * pickup cost (see TaxiAssignment). A taxi drops its client at the
+     * shop and is free there for the next window; clients left over
+     * when the taxis run out wait for the next window. Prints "client
+     * c taxi t pickup d" for each assignment to out and returns the
+     * totals, with the time spent building cost matrices and solving
+     * them.
+     */
+    public String assign(InputReader in, int count, List<String> taxis, int window, int threads,
+                         ResultWriter out) {
+        CsrGraph g = graph();
+        int[] stands = new int[taxis.size()];
+        for (int j = 0; j < stands.length; j++) {
+            stands[j] = g.id(taxis.get(j));
+            if (stands[j] < 0)
+                throw new NoSuchElementException("Taxi vertex not found");
+        }
+        TaxiAssignment fleet = new TaxiAssignment(g, stands, threads);
+        List<String[]> waiting = new ArrayList<String[]>();
+        int read = 0;
+        while (read < count || !waiting.isEmpty()) {
+            List<String[]> batch = new ArrayList<String[]>(waiting);
+            waiting.clear();
+            for (int i = 0; i < window && read < count; i++, read++) {
+                if (!in.nextLine())
+                    throw new NoSuchElementException("No line found");
+                String client = in.nextToken();
+                String shop = in.nextToken();
+                if (g.id(client) < 0 || g.id(shop) < 0) {
+                    out.println("client " + client);
+                    out.error("cannot be helped");
+                }
+                else {
+                    batch.add(new String[] { client, shop });
+                }
+            }
+            if (batch.isEmpty())
+                continue;
+            int[] clients = new int[batch.size()];
+            for (int i = 0; i < clients.length; i++)
+                clients[i] = g.id(batch.get(i)[0]);
+            int[] assigned = stands.length == 0 ? new int[clients.length] : fleet.assign(clients);
+            for (int i = 0; i < clients.length; i++) {
+                String[] request = batch.get(i);
+                if (stands.length > 0 && assigned[i] >= 0) {
+                    out.println("client " + request[0] + " taxi " + g.name(fleet.at(assigned[i]))
+                            + " pickup " + Double.valueOf(fleet.pickup(i)).intValue());
+                    fleet.move(assigned[i], g.id(request[1]));
+                }
+                else if (stands.length > 0 && fleet.reachable(i)) {
+                    waiting.add(request);
+                }
+                else {
+                    out.println("client " + request[0]);
+                    out.error("cannot be helped");
+                }
+            }
+        }
+        out.flush();
+        return fleet.stats();
+    }
+
+    /**
+     * Turn one line of the event stream into its request: "client c s"
+     * is dispatched like a client of the batch input, going to shop s;
+     * "taxi add v" and "taxi remove v" station and withdraw a taxi,
+     * "taxi move v w" moves one from v to w; "road v w cost" sets the
+     * cost of the road from v to w and "close v w" closes it. Only
+     * client requests run alongside each other.
+     */
+    static BatchDispatcher.Request event(SimulatorTwo g, List<String> taxis, String[] words) {
+        CsrGraph graph = g.graph();
+        switch (words[0]) {
+            case "client":
+                RequestStream.expect(words, 3);
+                return out -> processRequest(words[1], words[2], g, taxis, out);
+            case "taxi":
+                if (words.length == 4 && words[1].equals("move")) {
+                    String to = RequestStream.vertex(graph, words[3]);
+                    return BatchDispatcher.exclusive(out -> {
+                        int at = taxis.indexOf(words[2]);
+                        if (at < 0)
+                            throw new NoSuchElementException("no taxi at " + words[2]);
+                        taxis.set(at, to);      // Keeps the taxis' order, and so their ties
+                        g.taxiMoved(words[2], to);
+                    });
+                }
+                RequestStream.expect(words, 3);
+                String taxi = RequestStream.vertex(graph, words[2]);
+                if (words[1].equals("add"))
+                    return BatchDispatcher.exclusive(out -> {
+                        taxis.add(taxi);
+                        g.taxiMoved(null, taxi);
+                    });
+                if (words[1].equals("remove"))
+                    return BatchDispatcher.exclusive(out -> {
+                        RequestStream.remove(taxis, taxi);
+                        g.taxiMoved(taxi, null);
+                    });
+                break;
+            case "road":
+                RequestStream.expect(words, 4);
+                double cost = Double.parseDouble(words[3]);
+                return BatchDispatcher.exclusive(out -> g.updateEdge(words[1], words[2], cost));
+            case "close":
+                RequestStream.expect(words, 3);
+                return BatchDispatcher.exclusive(out -> g.removeEdge(words[1], words[2]));
+        }
+        throw new IllegalArgumentException("unknown event");
+    }
+
     /**
      * A main routine that:
      * 1. Reads a file containing edges (supplied as a command-line parameter);
@@ -313,9 +602,40 @@ public class SimulatorTwo {
      * runs the shortest path algorithm.
      * The data file is a sequence of lines of the format
      * source destination cost
+     * With "--threads N", clients are processed on N threads; the
+     * output is the same as the serial run. "--cache-mb N" sets the
+     * tree cache budget (0 turns it off) and "--cache-stats" prints
+     * its counters to stderr at the end. "--precompute" builds
+     * distance tables for the shops and taxis before the first client
+     * and reports their size and build time on stderr, "--ch" answers
+     * requests from a contraction hierarchy built on all cores,
+     * "--landmarks N" answers them by A* with N landmarks instead, and
+     * "--load-stats" reports how fast the graph was read. With
+     * "--graph file" the graph is opened from a snapshot written by
+     * GraphSnapshot and stdin starts at the shop count. With "--serve"
+     * the client section is replaced by a stream of events (see event),
+     * answered as they arrive until stdin ends; "--listen port" takes
+     * the events from connections to port on the loopback address.
+     * "--simulate" runs the clients, each line optionally ending in an
+     * arrival time, through a fleet whose taxis are busy while on a
+     * trip, and prints a summary instead of routes; "--patience T"
+     * makes waiting clients give up after T. "--assign W" assigns the
+     * clients to taxis W at a time for the least total pickup cost and
+     * reports the matrix and solve times on stderr. "--voronoi" labels
+     * every vertex with its nearest taxi up front, keeps the labels up
+     * to date through taxi and road events, and reports them on stderr
+     * with "--cache-stats". Large graphs are
+     * renumbered for cache locality as they load; "--keep-order" keeps
+     * ids in the order names first appear. "--metrics" counts the work
+     * and times of every search and request (see SearchMetrics) and
+     * prints a summary to stderr at the end.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         SimulatorTwo g = new SimulatorTwo();
+        int threads = intOption(args, "--threads", 1);  // Worker threads for the clients
+        g.setCacheBytes((long) intOption(args, "--cache-mb", DEFAULT_CACHE_MB) << 20);   // Tree cache budget
+        g.setReorder(!flag(args, "--keep-order"));     // Ids in input order
+        SearchMetrics.enable(flag(args, "--metrics"));    // Per-query counts and latencies
         int countNodes = 0;          // Initialize the count of nodes
         int countClients = -1;      // Initialize the count of clients
         int countShops = -1;       // Initialize the count of shops
@@ -323,53 +643,143 @@ public class SimulatorTwo {
         Map<String, String> requests = new HashMap<String, String>();     // Map to store client requests
         List<String> shops = new ArrayList<>();                          // List to store shops
         List<String> taxis = new ArrayList<>();                         // List to store taxis
+        boolean streaming = flag(args, "--serve") || intOption(args, "--listen", 0) > 0;   // Events instead of clients
+        boolean simulating = flag(args, "--simulate");     // Taxis taken while busy
+        int window = intOption(args, "--assign", 0);       // Clients assigned together, 0 for one by one
         
       
-        Scanner keyboard = new Scanner(System.in);
+        InputReader keyboard = new InputReader(System.in);
+        long loadStart = System.nanoTime();
         try {
-              countNodes = Integer.parseInt(keyboard.nextLine());     // Read the count of nodes from user input
-              
-              // Read the edges and add them to the graph
-              for (int i = 0; i <countNodes; i++) {
-                 String line = keyboard.nextLine();
-                 StringTokenizer st = new StringTokenizer(line);
-               
-                 String source = st.nextToken();     // Get the source node             
-                 while (st.hasMoreTokens()) {
-                    String dest = st.nextToken();     // Get the destination node
-                    int cost = Integer.parseInt(st.nextToken());   // Get the cost
-                    g.addEdge(source, dest, cost);       // Add the edge to the graph
-                 }
+              long loaded;
+              String snapshot = option(args, "--graph", null);  // Graph saved by GraphSnapshot, if any
+              if (snapshot != null) {
+                  g.loadSnapshot(snapshot);
+                  loaded = new File(snapshot).length();
+              } else {
+                  countNodes = keyboard.readIntLine();     // Read the count of nodes from user input
+                  
+                  // Read the edges and add them to the graph
+                  g.readEdges(keyboard, countNodes);
+                  loaded = keyboard.bytesRead();
               }
+              CsrGraph graph = g.graph();
+              if (flag(args, "--load-stats"))
+                  System.err.println(GraphLoader.report(graph, loaded, System.nanoTime() - loadStart));
 
-              countShops = Integer.parseInt(keyboard.nextLine());        // Read the count of shops from user input
+              countShops = keyboard.readIntLine();        // Read the count of shops from user input
               shops = new ArrayList<>(countShops);
-              StringTokenizer st = new StringTokenizer(keyboard.nextLine());
-              while (st.hasMoreTokens()) {
-                 shops.add(st.nextToken());
+              keyboard.nextLine();
+              while (keyboard.hasMoreTokens()) {
+                 shops.add(keyboard.nextToken());
               }  
-              countTaxis = Integer.parseInt(keyboard.nextLine());       // Read the count of taxis from user input
+              countTaxis = keyboard.readIntLine();       // Read the count of taxis from user input
               taxis = new ArrayList<>(countTaxis);
-              st = new StringTokenizer(keyboard.nextLine());
-              while (st.hasMoreTokens()) {
-                  taxis.add(st.nextToken());
+              keyboard.nextLine();
+              while (keyboard.hasMoreTokens()) {
+                  taxis.add(keyboard.nextToken());
               }
               
-              countClients = Integer.parseInt(keyboard.nextLine());      // Read the count of clients from user input
-              requests = new HashMap<>(countClients);                   // Initialize the map of client requests
-              for (int i =0; i < countClients;i++) {     
-                  st = new StringTokenizer(keyboard.nextLine());                   
-                  requests.put(st.nextToken(), st.nextToken());      // Add each client request to the map
+              if (!streaming && !simulating && window == 0) {
+                  countClients = keyboard.readIntLine();      // Read the count of clients from user input
+                  requests = new HashMap<>(countClients);                   // Initialize the map of client requests
+                  for (int i =0; i < countClients;i++) {     
+                      keyboard.nextLine();                   
+                      requests.put(keyboard.nextToken(), keyboard.nextToken());      // Add each client request to the map
+                  }
               }
-              keyboard.close();
               } catch (NumberFormatException e) {
                  System.out.println("Incorrect input was entered, please try again");
               
               }        
         
-         // Process each client request
-        for (String client: requests.keySet()) {
-            processRequest(client,requests.get(client), g, taxis);
+         // Contract the graph, or pick landmarks, so each leg is one small search
+        if (flag(args, "--ch"))
+            System.err.println(g.contract(Runtime.getRuntime().availableProcessors()));
+        else if (intOption(args, "--landmarks", 0) > 0)
+            System.err.println(g.landmarks(intOption(args, "--landmarks", 0),
+                    Runtime.getRuntime().availableProcessors()));
+         // Build the taxi and shop distance tables up front
+        if (flag(args, "--precompute"))
+            System.err.println(g.precompute(taxis, shops, threads));
+         // Label every vertex with its nearest taxi
+        if (flag(args, "--voronoi"))
+            System.err.println(g.voronoi(taxis));
+
+        ResultWriter results = ResultWriter.system();     // Buffered stdout for the results
+         // Run the fleet through the clients in time order, taxis busy on their trips
+        if (simulating) {
+            String patience = option(args, "--patience", null);
+            System.out.println(g.simulate(keyboard, keyboard.readIntLine(), taxis,
+                    patience == null ? INFINITY : Double.parseDouble(patience),
+                    Runtime.getRuntime().availableProcessors()));
+        }
+         // Give each window of clients the taxis that pick them all up soonest
+        else if (window > 0) {
+            System.err.println(g.assign(keyboard, keyboard.readIntLine(), taxis, window,
+                    Runtime.getRuntime().availableProcessors(), results));
         }
+         // Answer events as they arrive, taxis and roads changing between requests
+        else if (streaming) {
+            final List<String> liveTaxis = taxis;
+            RequestStream stream = new RequestStream(words -> event(g, liveTaxis, words), threads);
+            if (intOption(args, "--listen", 0) > 0)
+                stream.listen(intOption(args, "--listen", 0));
+            else
+                stream.serve(keyboard, results);
+        }
+         // Process the client requests on worker threads, printing in order
+        else if (threads > 1) {
+            g.graph();
+            List<BatchDispatcher.Request> batch = new ArrayList<>(requests.size());
+            for (Map.Entry<String, String> request: requests.entrySet()) {
+                final List<String> finalTaxis = taxis;
+                batch.add(out -> processRequest(request.getKey(), request.getValue(), g, finalTaxis, out));
+            }
+            new BatchDispatcher(threads).run(batch, results);
+        }
+        else {
+             // Process each client request
+            for (String client: requests.keySet()) {
+                processRequest(client,requests.get(client), g, taxis, results);
+            }
+            results.flush();      // One write of everything buffered
+        }
+        if (flag(args, "--cache-stats")) {
+            System.err.println(g.treeCache().stats());     // Tree cache counters
+            if (g.fleet != null)
+                System.err.println(g.fleet.stats());
+        }
+        if (SearchMetrics.enabled())
+            System.err.println(SearchMetrics.summary());
+    }
+
+    /**
+     * Value of the command-line option "name N", or otherwise.
+     */
+    static int intOption(String[] args, String name, int otherwise) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return Integer.parseInt(args[i + 1]);
+        }
+        return otherwise;
+    }
+
+    /**
+     * Value of the command-line option "name value", or otherwise.
+     */
+    static String option(String[] args, String name, String otherwise) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name))
+                return args[i + 1];
+        }
+        return otherwise;
+    }
+
+    /**
+     * Whether the command-line flag name is present.
+     */
+    static boolean flag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
     }
-}
+}
\ No newline at end of file
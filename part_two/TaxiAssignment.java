@@ -0,0 +1,333 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Assigns a window of clients to the fleet at once, so that the total
+// pickup cost over the window is least, instead of each client taking
+// the taxi nearest to it in turn.
+//
+// The taxi x client cost matrix needs one search per distinct vertex
+// on the smaller side: forward from each taxi when there are fewer
+// taxis, otherwise reverse from each client. Each search stops once
+// every vertex of the other side is settled, and they run in parallel,
+// one source per task. The assignment itself is the Hungarian method
+// (shortest augmenting paths with potentials), O(n^2 m) for n rows on
+// the smaller side and m columns. Pairs that cannot reach each other
+// get a cost above any assignment made of reachable pairs, so as many
+// clients as possible are served, and the cheapest way among those.
+//
+// ******************PUBLIC OPERATIONS**********************
+// int[] assign( int[] c )    --> Taxi for each client of c, -1 if none
+// double pickup( int i ) / boolean reachable( int i )
+//                            --> Client i of the last window's pickup
+//                                cost / whether any taxi reaches it
+// void move( int j, int v )  --> Taxi j is now at v
+// int at( int j )            --> Where taxi j is
+// String stats( )            --> Totals of every window so far, with the
+//                                greedy assignment for comparison
+// static double[][] costs( CsrGraph g, int[] t, int[] c, int threads )
+//                            --> Pickup cost of each client from each taxi
+// static int[] solve( double[][] cost ) / greedy( double[][] cost )
+class TaxiAssignment {
+    private final CsrGraph graph;
+    private final int[] taxiAt;
+    private final int threads;
+    private double[][] cost;            // Of the last window, client x taxi
+    private int[] assigned;
+
+    private long windows = 0;
+    private long searches = 0;
+    private long served = 0;
+    private double totalPickup = 0;
+    private long greedyServed = 0;
+    private double greedyPickup = 0;
+    private long matrixNanos = 0;
+    private long solveNanos = 0;
+
+    public TaxiAssignment(CsrGraph g, int[] taxis, int threads) {
+        this.graph = g;
+        this.taxiAt = taxis.clone();
+        this.threads = threads;
+    }
+
+    /**
+     * Assign the clients at the given vertices to distinct taxis with
+     * the least total pickup cost; return the taxi of each client, -1
+     * for a client left without one.
+     */
+    public int[] assign(int[] clients) {
+        long start = System.nanoTime();
+        cost = costs(graph, taxiAt, clients, threads);
+        long built = System.nanoTime();
+        assigned = solve(cost);
+        solveNanos += System.nanoTime() - built;
+        matrixNanos += built - start;
+        windows++;
+        searches += Math.min(distinct(taxiAt).length, distinct(clients).length);
+
+        for (int i = 0; i < clients.length; i++) {
+            if (assigned[i] >= 0) {
+                served++;
+                totalPickup += cost[i][assigned[i]];
+            }
+        }
+        int[] greedy = greedy(cost);
+        for (int i = 0; i < clients.length; i++) {
+            if (greedy[i] >= 0) {
+                greedyServed++;
+                greedyPickup += cost[i][greedy[i]];
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Pickup cost of client i of the last window from its taxi.
+     */
+    public double pickup(int i) {
+        return assigned[i] < 0 ? ShortestPaths.INFINITY : cost[i][assigned[i]];
+    }
+
+    /**
+     * Whether some taxi could reach client i of the last window.
+     */
+    public boolean reachable(int i) {
+        for (double c : cost[i]) {
+            if (c != ShortestPaths.INFINITY)
+                return true;
+        }
+        return false;
+    }
+
+    public void move(int taxi, int v) {
+        taxiAt[taxi] = v;
+    }
+
+    public int at(int taxi) {
+        return taxiAt[taxi];
+    }
+
+    public String stats() {
+        return String.format("%d windows, %d searches: %d clients assigned, pickup total %.1f "
+                        + "(greedy nearest taxi: %d clients, %.1f); matrices built in %d ms, solved in %d ms",
+                windows, searches, served, totalPickup, greedyServed, greedyPickup,
+                matrixNanos / 1000000, solveNanos / 1000000);
+    }
+
+    /**
+     * Cost of picking up each client from each taxi, [client][taxi],
+     * INFINITY where the taxi cannot reach the client. The searches
+     * run on threads worker threads.
+     */
+    static double[][] costs(CsrGraph g, int[] taxis, int[] clients, int threads) {
+        int[] taxiAt = distinct(taxis);
+        int[] clientAt = distinct(clients);
+        boolean fromTaxis = taxiAt.length <= clientAt.length;
+        int[] sources = fromTaxis ? taxiAt : clientAt;
+        int[] targets = fromTaxis ? clientAt : taxiAt;
+        boolean[] isTarget = new boolean[g.vertexCount()];
+        for (int v : targets)
+            isTarget[v] = true;
+
+        double[][] rows = new double[sources.length][];
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sources.length)));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(sources.length);
+            for (int s = 0; s < sources.length; s++) {
+                final int row = s;
+                tasks.add(() -> {
+                    rows[row] = search(g, sources[row], !fromTaxis, targets, isTarget);
+                    return null;
+                });
+            }
+            for (Future<Void> done : pool.invokeAll(tasks))
+                done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building cost matrix", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        int[] taxiIndex = index(taxiAt, taxis);
+        int[] clientIndex = index(clientAt, clients);
+        double[][] cost = new double[clients.length][taxis.length];
+        for (int i = 0; i < clients.length; i++) {
+            int c = clientIndex[i];
+            for (int j = 0; j < taxis.length; j++) {
+                int t = taxiIndex[j];
+                cost[i][j] = fromTaxis ? rows[t][c] : rows[c][t];
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Costs between source and each of targets, searching only until
+     * all of them are settled.
+     */
+    private static double[] search(CsrGraph g, int source, boolean reverse, int[] targets,
+                                   boolean[] isTarget) {
+        int[] left = { targets.length };
+        ShortestPathTree tree = ShortestPaths.nearest(g, source, reverse,
+                v -> isTarget[v] && --left[0] == 0, SearchSpace.local(g, 0));
+        double[] row = new double[targets.length];
+        for (int t = 0; t < targets.length; t++)
+            row[t] = tree.dist(targets[t]);
+        return row;
+    }
+
+    /**
+     * The column assigned to each row of cost for the least total over
+     * the most rows that can be given a finite cost; -1 for a row left
+     * out. Each column is used at most once.
+     */
+    static int[] solve(double[][] cost) {
+        int rows = cost.length;
+        int columns = rows == 0 ? 0 : cost[0].length;
+        int[] result = new int[rows];
+        Arrays.fill(result, -1);
+        if (rows == 0 || columns == 0)
+            return result;
+
+        // Unreachable pairs cost more than any assignment of reachable ones
+        double max = 0;
+        for (double[] row : cost) {
+            for (double c : row) {
+                if (c != ShortestPaths.INFINITY)
+                    max = Math.max(max, c);
+            }
+        }
+        double penalty = (max + 1) * (Math.min(rows, columns) + 1);
+
+        // The Hungarian method wants no more rows than columns
+        boolean transposed = rows > columns;
+        int n = transposed ? columns : rows;
+        int m = transposed ? rows : columns;
+        double[][] a = new double[n][m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                double c = transposed ? cost[j][i] : cost[i][j];
+                a[i][j] = c == ShortestPaths.INFINITY ? penalty : c;
+            }
+        }
+        int[] match = hungarian(a, n, m);
+        for (int i = 0; i < n; i++) {
+            int row = transposed ? match[i] : i;
+            int column = transposed ? i : match[i];
+            if (cost[row][column] != ShortestPaths.INFINITY)
+                result[row] = column;
+        }
+        return result;
+    }
+
+    /**
+     * Column of each of the n rows of a (n <= m) in a least-cost
+     * assignment: one Dijkstra-like sweep over the columns per row,
+     * with row and column potentials keeping reduced costs
+     * non-negative.
+     */
+    private static int[] hungarian(double[][] a, int n, int m) {
+        double[] u = new double[n + 1];     // Row potentials, 1-based
+        double[] v = new double[m + 1];     // Column potentials; column 0 is the root
+        int[] row = new int[m + 1];         // Row matched to each column, 0 if none
+        int[] way = new int[m + 1];         // Previous column on the augmenting path
+        double[] minCost = new double[m + 1];
+        boolean[] used = new boolean[m + 1];
+        for (int i = 1; i <= n; i++) {
+            row[0] = i;
+            int j0 = 0;
+            Arrays.fill(minCost, Double.POSITIVE_INFINITY);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = row[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                double[] costs = a[i0 - 1];
+                for (int j = 1; j <= m; j++) {
+                    if (used[j])
+                        continue;
+                    double reduced = costs[j - 1] - u[i0] - v[j];
+                    if (reduced < minCost[j]) {
+                        minCost[j] = reduced;
+                        way[j] = j0;
+                    }
+                    if (minCost[j] < delta) {
+                        delta = minCost[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[row[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minCost[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (row[j0] != 0);
+            do {                            // Flip the augmenting path
+                int j1 = way[j0];
+                row[j0] = row[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+        int[] match = new int[n];
+        for (int j = 1; j <= m; j++) {
+            if (row[j] != 0)
+                match[row[j] - 1] = j - 1;
+        }
+        return match;
+    }
+
+    /**
+     * Each row in turn takes its cheapest column not yet taken, as
+     * dispatching clients one at a time would; -1 if none is finite.
+     */
+    static int[] greedy(double[][] cost) {
+        int[] result = new int[cost.length];
+        boolean[] taken = new boolean[cost.length == 0 ? 0 : cost[0].length];
+        for (int i = 0; i < cost.length; i++) {
+            int best = -1;
+            for (int j = 0; j < taken.length; j++) {
+                if (!taken[j] && cost[i][j] != ShortestPaths.INFINITY
+                        && (best < 0 || cost[i][j] < cost[i][best]))
+                    best = j;
+            }
+            result[i] = best;
+            if (best >= 0)
+                taken[best] = true;
+        }
+        return result;
+    }
+
+    private static int[] distinct(int[] vertices) {
+        return Arrays.stream(vertices).distinct().toArray();
+    }
+
+    /**
+     * Position in distinct of each entry of vertices.
+     */
+    private static int[] index(int[] distinct, int[] vertices) {
+        Map<Integer, Integer> index = new HashMap<Integer, Integer>();
+        for (int i = 0; i < distinct.length; i++)
+            index.put(distinct[i], i);
+        int[] positions = new int[vertices.length];
+        for (int i = 0; i < vertices.length; i++)
+            positions[i] = index.get(vertices[i]);
+        return positions;
+    }
+}
@@ -0,0 +1,380 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+// Network Voronoi diagram of the taxis: every vertex labelled with the
+// cost from its nearest taxi, that taxi's vertex, whether taxis at
+// other vertices are as near, and the number of equal-cost shortest
+// paths from them, so the pickup leg of a request is read from the
+// client's labels instead of searched for.
+//
+// The labels are one Dijkstra search from all taxis at once. When a
+// taxi is stationed, withdrawn or moved, or an edge cost changes, only
+// the affected vertices are labelled again. A new taxi or a cheaper
+// edge affects the vertices it reaches at no more than their present
+// cost, found by a search from it that goes no further. A withdrawn
+// taxi or a dearer shortest-path edge affects the vertices whose
+// shortest paths run through it. Affected vertices are then
+// searched again, seeded from their unaffected in-neighbours, and each
+// is labelled from its shortest-path predecessors in cost order, as a
+// fresh search would. On graphs with zero-cost edges every change
+// labels the whole graph again (see TreeRepair).
+//
+// The set of taxis tied at a vertex is not kept, since it cannot be
+// merged from a vertex's predecessors; a tied client is planned by
+// search (see DispatchPlanner). Labels are read by any number of
+// threads, but changes must not run alongside them.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void add( int v ) / remove( int v )
+//                            --> Station / withdraw a taxi at v
+// void move( int v, int w )  --> A taxi drives from v to w
+// int repair( int u, int w, double old )
+//                            --> Relabel after the cost of u -> w
+//                                changed from old; return the
+//                                number of vertices relabelled
+// double dist( int v )       --> Cost from the nearest taxi to v
+// int taxi( int v )          --> Vertex of a nearest taxi, -1 if none
+// boolean tied( int v )      --> Whether taxis elsewhere are as near
+// int paths( int v )         --> Shortest paths from the nearest taxis
+// List<Route> nearest( int v ) --> Leg from each nearest taxi, null if tied
+// String stats( )            --> Sizes, lookups and relabelling work
+// ******************ERRORS*********************************
+// NoSuchElementException if no taxi is at the vertex removed or moved.
+class TaxiVoronoi {
+    private final CsrGraph graph;
+    private final int[] taxis;          // Taxis at each vertex
+    private final double[] dist;
+    private final int[] owner;          // Vertex of a nearest taxi, -1 if none
+    private final boolean[] tied;
+    private final int[] paths;
+    private final int[] prev;           // Predecessor on a shortest path, -1 at a taxi
+
+    // Work space of a change: heap keys, the affected vertices and marks
+    private final double[] key;
+    private final IndexedHeap heap;
+    private final int[] mark;           // stamp affected, stamp + 1 also settled
+    private final int[] reached;        // stamp when key holds a search cost
+    private int stamp = 0;
+    private int[] affected;
+    private int size = 0;
+
+    private final long buildNanos;
+    private long changes = 0;
+    private long relabelled = 0;
+    private long changeNanos = 0;
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder searched = new LongAdder();
+
+    /**
+     * Label every vertex of g from taxis at the given vertices, a
+     * vertex repeated for each taxi there.
+     */
+    public TaxiVoronoi(CsrGraph g, int[] taxiAt) {
+        long start = System.nanoTime();
+        int n = g.vertexCount();
+        graph = g;
+        taxis = new int[n];
+        dist = new double[n];
+        owner = new int[n];
+        tied = new boolean[n];
+        paths = new int[n];
+        prev = new int[n];
+        key = new double[n];
+        heap = new IndexedHeap(key);
+        mark = new int[n];
+        reached = new int[n];
+        affected = new int[Math.max(16, n)];
+        for (int v : taxiAt)
+            taxis[v]++;
+        relabelAll();
+        relabelled = 0;
+        buildNanos = System.nanoTime() - start;
+    }
+
+    public double dist(int v) {
+        return dist[v];
+    }
+
+    public int taxi(int v) {
+        return owner[v];
+    }
+
+    public boolean tied(int v) {
+        return tied[v];
+    }
+
+    public int paths(int v) {
+        return paths[v];
+    }
+
+    /**
+     * The leg from the nearest taxi to v once for each taxi standing
+     * there, empty if no taxi reaches v; null if taxis at other
+     * vertices are as near, so the caller must search for them.
+     */
+    public List<Route> nearest(int v) {
+        if (tied[v]) {
+            searched.increment();
+            return null;
+        }
+        answered.increment();
+        if (owner[v] < 0)
+            return Collections.emptyList();
+        int length = 0;
+        for (int u = v; u != -1; u = prev[u])
+            length++;
+        int[] vertices = new int[length];
+        SearchMetrics.route(length);
+        int i = length - 1;
+        for (int u = v; u != -1; u = prev[u])
+            vertices[i--] = u;
+        Route leg = new Route(owner[v], v, dist[v], paths[v], vertices);
+        return Collections.nCopies(taxis[owner[v]], leg);
+    }
+
+    /**
+     * Station a taxi at v.
+     */
+    public void add(int v) {
+        long start = System.nanoTime();
+        if (taxis[v]++ == 0) {
+            if (graph.minWeight <= 0) {
+                relabelAll();
+            }
+            else {
+                newStamp();
+                collectReached(v, 0);
+                relabel();
+            }
+        }
+        changed(start);
+    }
+
+    /**
+     * Withdraw a taxi from v.
+     */
+    public void remove(int v) {
+        long start = System.nanoTime();
+        if (taxis[v] == 0)
+            throw new NoSuchElementException("no taxi at " + graph.name(v));
+        if (--taxis[v] == 0) {
+            if (graph.minWeight <= 0) {
+                relabelAll();
+            }
+            else {
+                newStamp();
+                collectThrough(v);
+                relabel();
+            }
+        }
+        changed(start);
+    }
+
+    public void move(int from, int to) {
+        if (from == to && taxis[from] > 0)
+            return;
+        remove(from);
+        add(to);
+    }
+
+    /**
+     * Relabel after the cost of every edge from u to w changed from old
+     * (the cheapest of them) to its value in the graph; return the
+     * number of vertices relabelled.
+     */
+    public int repair(int u, int w, double old) {
+        long start = System.nanoTime();
+        long before = relabelled;
+        if (graph.minWeight <= 0) {
+            relabelAll();
+        }
+        else if (dist[u] != ShortestPaths.INFINITY) {
+            double now = CsrGraph.NO_EDGE;
+            for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+                if (graph.targets[e] == w)
+                    now = Math.min(now, graph.weights[e]);
+            }
+            newStamp();
+            if (dist[u] + old == dist[w])           // A shortest-path edge; dearer or not
+                collectThrough(w);
+            if (dist[u] + now <= dist[w])           // Reaches w at no more than its cost
+                collectReached(w, dist[u] + now);
+            relabel();
+        }
+        changed(start);
+        return (int) (relabelled - before);
+    }
+
+    private void changed(long start) {
+        changes++;
+        changeNanos += System.nanoTime() - start;
+    }
+
+    private void relabelAll() {
+        newStamp();
+        for (int v = 0; v < graph.vertexCount(); v++)
+            affect(v);
+        relabel();
+    }
+
+    /**
+     * Collect the vertices a search from v, starting at cost, reaches
+     * at no more than their present cost.
+     */
+    private void collectReached(int v, double cost) {
+        key[v] = cost;
+        reached[v] = stamp;
+        heap.add(v);
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            if (mark[x] != stamp)
+                affect(x);
+            for (int e = graph.offsets[x]; e < graph.offsets[x + 1]; e++) {
+                int y = graph.targets[e];
+                double d = key[x] + graph.weights[e];
+                if (d > dist[y])
+                    continue;
+                if (reached[y] != stamp) {
+                    reached[y] = stamp;
+                    key[y] = d;
+                    heap.add(y);
+                }
+                else if (heap.contains(y) && d < key[y]) {
+                    key[y] = d;
+                    heap.decreased(y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect v and every vertex with a shortest path through it.
+     */
+    private void collectThrough(int v) {
+        int first = size;
+        affect(v);
+        for (int i = first; i < size; i++) {
+            int x = affected[i];
+            if (dist[x] == ShortestPaths.INFINITY)
+                continue;
+            for (int e = graph.offsets[x]; e < graph.offsets[x + 1]; e++) {
+                int y = graph.targets[e];
+                if (mark[y] != stamp && dist[x] + graph.weights[e] == dist[y])
+                    affect(y);
+            }
+        }
+    }
+
+    private void newStamp() {
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(mark, 0);
+            Arrays.fill(reached, 0);
+            stamp = 0;
+        }
+        stamp += 2;
+        size = 0;
+    }
+
+    private void affect(int v) {
+        if (size == affected.length)
+            affected = Arrays.copyOf(affected, size * 2);
+        affected[size++] = v;
+        mark[v] = stamp;
+    }
+
+    /**
+     * Search the affected vertices again from taxis among them and
+     * their unaffected in-neighbours, labelling each as it settles.
+     */
+    private void relabel() {
+        for (int i = 0; i < size; i++) {
+            int v = affected[i];
+            key[v] = taxis[v] > 0 ? 0 : ShortestPaths.INFINITY;
+            for (int e = graph.inOffsets[v]; e < graph.inOffsets[v + 1]; e++) {
+                int u = graph.sources[e];
+                if (mark[u] != stamp && mark[u] != stamp + 1 && dist[u] != ShortestPaths.INFINITY)
+                    key[v] = Math.min(key[v], dist[u] + graph.inWeights[e]);
+            }
+            if (key[v] != ShortestPaths.INFINITY)
+                heap.add(v);
+        }
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            label(v, key[v]);
+            mark[v] = stamp + 1;
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                int y = graph.targets[e];
+                double d = key[v] + graph.weights[e];
+                if (mark[y] != stamp || d >= key[y])
+                    continue;
+                key[y] = d;
+                if (heap.contains(y))
+                    heap.decreased(y);
+                else
+                    heap.add(y);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int v = affected[i];
+            if (mark[v] == stamp) {             // Out of every taxi's reach
+                dist[v] = ShortestPaths.INFINITY;
+                owner[v] = -1;
+                tied[v] = false;
+                paths[v] = 0;
+                prev[v] = -1;
+            }
+        }
+        relabelled += size;
+    }
+
+    /**
+     * Label v, at cost d, from its shortest-path predecessors, all
+     * labelled already.
+     */
+    private void label(int v, double d) {
+        dist[v] = d;
+        owner[v] = -1;
+        tied[v] = false;
+        paths[v] = 0;
+        prev[v] = -1;
+        boolean taxi = taxis[v] > 0 && d == 0;
+        if (taxi) {
+            owner[v] = v;
+            paths[v] = 1;
+        }
+        for (int e = graph.inOffsets[v]; e < graph.inOffsets[v + 1]; e++) {
+            int u = graph.sources[e];
+            if (mark[u] == stamp || dist[u] == ShortestPaths.INFINITY || dist[u] + graph.inWeights[e] != d)
+                continue;
+            if (owner[v] < 0) {
+                owner[v] = owner[u];
+                tied[v] = tied[u];
+                paths[v] = paths[u];
+                prev[v] = u;
+                continue;
+            }
+            if (owner[u] != owner[v] || tied[u])
+                tied[v] = true;
+            if (!taxi)                          // A taxi's own vertex has the one empty path
+                paths[v] = ShortestPaths.addPaths(paths[v], paths[u]);
+        }
+    }
+
+    public String stats() {
+        int n = graph.vertexCount();
+        int stations = 0;
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (taxis[v] > 0)
+                stations++;
+            count += taxis[v];
+        }
+        return String.format("taxi voronoi (%d taxis at %d vertices, %d vertices): built in %d ms; "
+                        + "%d changes relabelled %d vertices in %d ms; %d lookups answered, %d tied",
+                count, stations, n, buildNanos / 1000000, changes, relabelled, changeNanos / 1000000,
+                answered.sum(), searched.sum());
+    }
+}
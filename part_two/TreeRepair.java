@@ -0,0 +1,311 @@
+// Repairs a complete shortest-path tree after an edge cost changed,
+// instead of searching it again (dynamic single-source shortest paths,
+// after Ramalingam and Reps).
+//
+// A tree is given as dist, prev and paths arrays with the entry of
+// vertex v at column + v * stride, so both a tree snapshot (column 0,
+// stride 1) and one column of a vertex-major DistanceTable can be
+// repaired where they are. The graph must already hold the new cost.
+// For an edge u -> v in the tree's direction:
+//
+// - cheaper: if it now gives v a smaller cost, Dijkstra from v lowers
+//   the costs of every vertex it improves, and nothing else;
+// - dearer, and it was a shortest-path edge: the vertices left without
+//   a shortest-path predecessor outside the affected set are collected
+//   in cost order, then given their new costs by Dijkstra seeded from
+//   their unaffected in-neighbours.
+//
+// Path counts and predecessors of the changed vertices, their
+// out-neighbours and v are then recounted in cost order, and a
+// recount that changes a vertex's path count moves on to the vertices
+// it is a shortest-path predecessor of. With positive costs every
+// predecessor on a shortest path has a smaller cost, so cost order is
+// a topological order of the shortest paths and the counts come out
+// exactly as a fresh search's. Where several predecessors tie, prev
+// may name a different one than a fresh search would. On graphs with
+// zero-cost edges the tree is searched again instead.
+//
+// Work is done in the calling thread's SearchSpace: its dist array
+// holds heap keys, its marks flag the changed vertices and its settle
+// order lists them.
+//
+// ******************PUBLIC OPERATIONS**********************
+// int edgeChanged( int u, int v, double old )
+//                   --> Repair after the cost of u -> v (graph
+//                       direction) changed from old; return the
+//                       number of vertices recounted
+// ******************ERRORS*********************************
+// GraphException if the graph has negative edges.
+class TreeRepair {
+    private final CsrGraph graph;
+    private final int source;
+    private final boolean reverse;
+    private final double[] dist;
+    private final int[] prev;
+    private final int[] paths;
+    private final int column;
+    private final int stride;
+    private final int[] outOffsets;     // Edges in the tree's direction
+    private final int[] outTargets;
+    private final double[] outWeights;
+    private final int[] inOffsets;      // and against it
+    private final int[] inSources;
+    private final double[] inWeights;
+    private SearchSpace space;
+
+    TreeRepair(CsrGraph g, int source, boolean reverse, double[] dist, int[] prev, int[] paths,
+               int column, int stride) {
+        this.graph = g;
+        this.source = source;
+        this.reverse = reverse;
+        this.dist = dist;
+        this.prev = prev;
+        this.paths = paths;
+        this.column = column;
+        this.stride = stride;
+        outOffsets = reverse ? g.inOffsets : g.offsets;
+        outTargets = reverse ? g.sources : g.targets;
+        outWeights = reverse ? g.inWeights : g.weights;
+        inOffsets = reverse ? g.offsets : g.inOffsets;
+        inSources = reverse ? g.targets : g.sources;
+        inWeights = reverse ? g.weights : g.inWeights;
+    }
+
+    /**
+     * Repair the tree after the cost of every edge from u to w of the
+     * graph changed from old (the cheapest of them) to its current
+     * value, and return the number of vertices whose path counts were
+     * recounted; 0 if the tree did not change.
+     */
+    public int edgeChanged(int u, int w, double old) {
+        if (graph.minWeight < 0)
+            throw new GraphException("Graph has negative edges");
+        int tail = reverse ? w : u;     // The edge in the tree's direction
+        int head = reverse ? u : w;
+        double dt = dist[slot(tail)];
+        if (head == source || dt == ShortestPaths.INFINITY)
+            return 0;
+        if (graph.minWeight <= 0)
+            return research();
+
+        double cost = cost(tail, head);
+        double dh = dist[slot(head)];
+        space = SearchSpace.local(graph, 0);
+        space.reset();
+        if (dt + cost < dh)
+            lower(head, dt + cost);
+        else if (dt + old == dh || dt + cost == dh)
+            raise(head);
+        else
+            return 0;
+        return recount(head);
+    }
+
+    private int slot(int v) {
+        return column + v * stride;
+    }
+
+    /**
+     * Current cost of the cheapest edge tail -> head in the tree's
+     * direction.
+     */
+    private double cost(int tail, int head) {
+        double cost = CsrGraph.NO_EDGE;
+        for (int e = outOffsets[tail]; e < outOffsets[tail + 1]; e++) {
+            if (outTargets[e] == head)
+                cost = Math.min(cost, outWeights[e]);
+        }
+        return cost;
+    }
+
+    /**
+     * The changed edge gives v the smaller cost d: Dijkstra from v
+     * over the vertices whose costs drop.
+     */
+    private void lower(int v, double d) {
+        IndexedHeap heap = space.heap;
+        double[] key = space.dist;
+        changed(v);
+        dist[slot(v)] = d;
+        key[v] = d;
+        heap.add(v);
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            double dx = dist[slot(x)];
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++) {
+                int y = outTargets[e];
+                double dy = dx + outWeights[e];
+                if (dy < dist[slot(y)]) {
+                    dist[slot(y)] = dy;
+                    changed(y);
+                    key[y] = dy;
+                    if (heap.contains(y))
+                        heap.decreased(y);
+                    else
+                        heap.add(y);
+                }
+            }
+        }
+    }
+
+    /**
+     * A shortest-path edge into v got dearer or went away: find the
+     * vertices whose costs rise and search their new costs.
+     */
+    private void raise(int v) {
+        IndexedHeap heap = space.heap;
+        double[] key = space.dist;
+
+        // Candidates are decided in cost order, so all their shortest-path
+        // predecessors are decided first
+        space.touch(v);
+        key[v] = dist[slot(v)];
+        heap.add(v);
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            if (unaffectedPredecessor(x) >= 0)
+                continue;
+            changed(x);
+            double dx = dist[slot(x)];
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++) {
+                int y = outTargets[e];
+                if (dx + outWeights[e] == dist[slot(y)] && y != source
+                        && !space.marked(y) && !heap.contains(y)) {
+                    space.touch(y);
+                    key[y] = dist[slot(y)];
+                    heap.add(y);
+                }
+            }
+        }
+
+        // New costs: the best way in from outside the affected set, then
+        // Dijkstra among the affected vertices
+        for (int i = 0; i < space.settledCount; i++) {
+            int x = space.order[i];
+            double best = ShortestPaths.INFINITY;
+            for (int e = inOffsets[x]; e < inOffsets[x + 1]; e++) {
+                int p = inSources[e];
+                double dp = dist[slot(p)];
+                if (dp != ShortestPaths.INFINITY && !space.marked(p))
+                    best = Math.min(best, dp + inWeights[e]);
+            }
+            dist[slot(x)] = best;
+            key[x] = best;
+            if (best != ShortestPaths.INFINITY)
+                heap.add(x);
+        }
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            double dx = dist[slot(x)];
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++) {
+                int y = outTargets[e];
+                double dy = dx + outWeights[e];
+                if (space.marked(y) && dy < dist[slot(y)]) {
+                    dist[slot(y)] = dy;
+                    key[y] = dy;
+                    if (heap.contains(y))
+                        heap.decreased(y);
+                    else
+                        heap.add(y);
+                }
+            }
+        }
+    }
+
+    /**
+     * A shortest-path predecessor of x that is not marked as changed,
+     * or -1 if none.
+     */
+    private int unaffectedPredecessor(int x) {
+        double dx = dist[slot(x)];
+        for (int e = inOffsets[x]; e < inOffsets[x + 1]; e++) {
+            int p = inSources[e];
+            double dp = dist[slot(p)];
+            if (dp != ShortestPaths.INFINITY && dp + inWeights[e] == dx && !space.marked(p))
+                return p;
+        }
+        return -1;
+    }
+
+    private void changed(int x) {
+        if (!space.marked(x)) {
+            space.touch(x);
+            space.mark(x);
+            space.order[space.settledCount++] = x;
+        }
+    }
+
+    /**
+     * Recount the path counts and predecessors of head, of every
+     * changed vertex and its out-neighbours, and of every vertex below
+     * a recount that changed, in cost order.
+     */
+    private int recount(int head) {
+        IndexedHeap heap = space.heap;
+        double[] key = space.dist;
+        queue(head);
+        int changedCount = space.settledCount;
+        for (int i = 0; i < changedCount; i++) {
+            int x = space.order[i];
+            queue(x);
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++)
+                queue(outTargets[e]);
+        }
+
+        int recounted = 0;
+        while (!heap.isEmpty()) {
+            int x = heap.poll();
+            recounted++;
+            int sx = slot(x);
+            double dx = dist[sx];
+            if (dx == ShortestPaths.INFINITY) {
+                prev[sx] = -1;
+                paths[sx] = 0;
+                continue;
+            }
+            int count = 0;
+            int via = -1;
+            for (int e = inOffsets[x]; e < inOffsets[x + 1]; e++) {
+                int p = inSources[e];
+                double dp = dist[slot(p)];
+                if (dp != ShortestPaths.INFINITY && dp + inWeights[e] == dx) {
+                    count = ShortestPaths.addPaths(count, paths[slot(p)]);
+                    if (via < 0 || p == prev[sx])   // Keep the old route if it still holds
+                        via = p;
+                }
+            }
+            prev[sx] = via;
+            if (paths[sx] == count)
+                continue;
+            paths[sx] = count;
+            for (int e = outOffsets[x]; e < outOffsets[x + 1]; e++) {
+                int y = outTargets[e];
+                if (dx + outWeights[e] == dist[slot(y)])
+                    queue(y);
+            }
+        }
+        return recounted;
+    }
+
+    private void queue(int v) {
+        if (v == source || space.heap.contains(v))
+            return;
+        space.touch(v);
+        space.dist[v] = dist[slot(v)];
+        space.heap.add(v);
+    }
+
+    /**
+     * Search the whole tree again and copy it in.
+     */
+    private int research() {
+        ShortestPathTree tree = ShortestPaths.dijkstra(graph, source, reverse);
+        for (int v = 0; v < graph.vertexCount(); v++) {
+            int sv = slot(v);
+            dist[sv] = tree.dist(v);
+            prev[sv] = tree.prev(v);
+            paths[sv] = tree.paths(v);
+        }
+        return graph.vertexCount();
+    }
+}
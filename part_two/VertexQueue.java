@@ -0,0 +1,26 @@
+// Priority queue of vertex ids keyed by an array the caller owns (a
+// search's distance array), with decrease-key, as a Dijkstra frontier
+// uses it. IndexedHeap works for any costs; RadixHeap only for whole
+// costs that never drop below the last one polled.
+//
+// ******************PUBLIC OPERATIONS**********************
+// void add( int v )          --> Insert v, keyed by keys[v]
+// void decreased( int v )    --> Restore order after keys[v] dropped
+// int poll( )                --> Remove and return the smallest id
+// double peekKey( )          --> keys of the smallest id
+// boolean contains( int v ) / isEmpty( ) / clear( )
+interface VertexQueue {
+    void add(int v);
+
+    void decreased(int v);
+
+    int poll();
+
+    double peekKey();
+
+    boolean contains(int v);
+
+    boolean isEmpty();
+
+    void clear();
+}